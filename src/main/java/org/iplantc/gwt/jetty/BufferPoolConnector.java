@@ -0,0 +1,18 @@
+package org.iplantc.gwt.jetty;
+
+import org.eclipse.jetty.io.Buffers;
+
+/**
+ * Implemented by connectors that can take their request and response buffers from pools supplied by the launcher
+ * instead of the pools that Jetty creates for each connector.
+ */
+public interface BufferPoolConnector {
+
+    /**
+     * Sets the buffer pools to use.  This has to be called before the connector is started.
+     *
+     * @param requestBuffers the pool to take request buffers from.
+     * @param responseBuffers the pool to take response buffers from.
+     */
+    public void setBufferPools(Buffers requestBuffers, Buffers responseBuffers);
+}
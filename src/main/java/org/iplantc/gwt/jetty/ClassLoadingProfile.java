@@ -0,0 +1,183 @@
+package org.iplantc.gwt.jetty;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.thirdparty.guava.common.io.Closeables;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A file listing the classes that a web application loaded, in the order in which it loaded them.  The profile is
+ * written when the web application stops and is used to preload the same classes in the background the next time the
+ * web application starts, so that the first requests after a reload or restart don't stall while classes are loaded on
+ * demand.
+ *
+ * The classes are preloaded on a single background thread.  Jetty's web application class loader isn't parallel
+ * capable, so every load holds the class loader's lock and more threads wouldn't load classes any faster.
+ *
+ * The profile decides which classes are loaded, and so which static initializers run, so the default profile file is
+ * kept in the launcher's private directory.
+ */
+public class ClassLoadingProfile {
+
+    /**
+     * The logger to use for informational and error messages.
+     */
+    private final TreeLogger logger;
+
+    /**
+     * The profile file.
+     */
+    private final File file;
+
+    /**
+     * @param logger the logger to use for informational and error messages.
+     * @param file the profile file.
+     */
+    public ClassLoadingProfile(TreeLogger logger, File file) {
+        this.logger = logger;
+        this.file = file;
+    }
+
+    /**
+     * Determines the default location of the profile file for a web application, which is in the launcher's private
+     * directory.
+     *
+     * @param appRootDir the root directory of the web application.
+     * @return the profile file.
+     * @throws IOException if the private directory can't be used.
+     * @see PrivateFiles
+     */
+    public static File defaultFile(File appRootDir) throws IOException {
+        return PrivateFiles.defaultLocation("classes-", appRootDir, ".txt");
+    }
+
+    /**
+     * Writes the profile.
+     *
+     * @param classNames the names of the classes that were loaded, in the order in which they were loaded.
+     */
+    public void write(List<String> classNames) {
+        if (classNames.isEmpty()) {
+            return;
+        }
+        File tempFile = null;
+        PrintWriter out = null;
+        try {
+            tempFile = PrivateFiles.createTempFile(file);
+            out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+            for (String className : classNames) {
+                out.println(className);
+            }
+            out.close();
+            if (out.checkError()) {
+                throw new IOException("unable to write " + tempFile);
+            }
+            out = null;
+            if (file.exists() && !file.delete() || !tempFile.renameTo(file)) {
+                throw new IOException("unable to replace " + file);
+            }
+            logger.log(TreeLogger.TRACE, "Wrote " + classNames.size() + " classes to " + file);
+        }
+        catch (IOException e) {
+            logger.log(TreeLogger.WARN, "Unable to write the class loading profile", e);
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+        finally {
+            Closeables.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Starts preloading the classes listed in the profile in the background.
+     *
+     * @param classLoader the class loader to load the classes with.
+     * @return a future that completes when the classes have been loaded, or null if there's no profile to replay.
+     */
+    public Future<Integer> startPreloading(final ClassLoader classLoader) {
+        final List<String> classNames = read();
+        if (classNames.isEmpty()) {
+            return null;
+        }
+        ExecutorService preloader = Executors.newSingleThreadExecutor(new DaemonThreadFactory("class-preloader"));
+        try {
+            return preloader.submit(new Callable<Integer>() {
+                public Integer call() {
+                    int loaded = 0;
+                    for (String className : classNames) {
+                        if (preload(classLoader, className)) {
+                            loaded++;
+                        }
+                    }
+                    logger.log(TreeLogger.TRACE, "Preloaded " + loaded + " of " + classNames.size() + " classes");
+                    return loaded;
+                }
+            });
+        }
+        finally {
+            preloader.shutdown();
+        }
+    }
+
+    /**
+     * Loads a single class without initializing it.
+     *
+     * @param classLoader the class loader to load the class with.
+     * @param className the name of the class.
+     * @return true if the class was loaded.
+     */
+    private boolean preload(ClassLoader classLoader, String className) {
+        try {
+            Class.forName(className, false, classLoader);
+            return true;
+        }
+        catch (ClassNotFoundException e) {
+            return false;
+        }
+        catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the profile.
+     *
+     * @return the names of the classes listed in the profile, which is empty if there's no profile.
+     */
+    private List<String> read() {
+        List<String> classNames = new ArrayList<String>();
+        if (!file.isFile()) {
+            return classNames;
+        }
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().length() > 0) {
+                    classNames.add(line.trim());
+                }
+            }
+        }
+        catch (IOException e) {
+            logger.log(TreeLogger.WARN, "Unable to read the class loading profile", e);
+        }
+        finally {
+            Closeables.closeQuietly(in);
+        }
+        return classNames;
+    }
+}
@@ -50,8 +50,17 @@ public enum ClientAuth {
      */
     public SslSocketConnector getConnector(SslContextFactory contextFactory, TreeLogger logger) {
         logger.log(TreeLogger.Type.TRACE, logMsg);
+        configure(contextFactory);
+        return new LauncherSslSocketConnector(contextFactory);
+    }
+
+    /**
+     * Applies the client authentication settings to an SSL context factory.
+     *
+     * @param contextFactory the SSL context factory.
+     */
+    public void configure(SslContextFactory contextFactory) {
         contextFactory.setWantClientAuth(wantClientAuth);
         contextFactory.setNeedClientAuth(needClientAuth);
-        return new SslSocketConnector(contextFactory);
     }
 }
@@ -0,0 +1,347 @@
+package org.iplantc.gwt.jetty;
+
+import com.google.gwt.core.ext.TreeLogger;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.http.HttpHeaders;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+/**
+ * A handler that limits the number of requests processed concurrently and sheds the excess with a 503 status and a
+ * {@code Retry-After} header, so that bursts don't pile up in the thread pool queue.  The limit adapts to the measured
+ * latency using additive increase and multiplicative decrease: it grows by one whenever a request completes quickly
+ * while at least half of the limit is in use, and it shrinks by a constant factor when requests have been failing or
+ * queueing for a sustained period while the limit is nearly exhausted.
+ *
+ * Requests are considered to be queueing when the short-term average latency has risen well above the long-term
+ * average latency.  Both averages are kept separately for static files, GWT-RPC calls and other dynamic requests,
+ * whose latencies differ widely.  Comparing averages rather than single samples with the best recent latency means
+ * that a steady mix of cheap and expensive calls within a route class isn't mistaken for congestion.  The limit only
+ * shrinks when most recent requests have been slow and the number of requests in flight is close to the limit, so
+ * slow requests at low load never shed healthy traffic, and the signal starts over after each decrease.
+ *
+ * The bookkeeping is lock free because it runs at the end of every request.
+ *
+ * Requests for health check paths are never shed so that orchestration doesn't mistake an overloaded server for a dead
+ * one.
+ */
+public class ConcurrencyLimitHandler extends HandlerWrapper implements StatisticsReporter {
+
+    /**
+     * The smallest limit that the limit is ever reduced to.
+     */
+    private static final int MIN_LIMIT = 1;
+
+    /**
+     * The factor applied to the limit when requests have been failing or slow.
+     */
+    private static final double BACKOFF_RATIO = 0.9;
+
+    /**
+     * The fraction of the limit that has to be in use for the limit to be decreased.
+     */
+    private static final double BACKOFF_LOAD = 0.8;
+
+    /**
+     * Requests are considered slow while the short-term average latency exceeds the long-term average by this factor.
+     */
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    /**
+     * The weight given to each new sample in the short-term average latency, which covers roughly the last 50
+     * requests of a route class.
+     */
+    private static final double SHORT_SMOOTHING = 0.02;
+
+    /**
+     * The weight given to each new sample in the long-term average latency, which covers roughly the last 500
+     * requests of a route class.
+     */
+    private static final double LONG_SMOOTHING = 0.002;
+
+    /**
+     * The number of samples of a route class that have to be measured before any of them is considered slow.
+     */
+    private static final int WARMUP_SAMPLES = 100;
+
+    /**
+     * The weight given to each new sample in the moving average of slow requests.
+     */
+    private static final double SLOW_SMOOTHING = 0.1;
+
+    /**
+     * The moving average of slow requests above which the limit is decreased.
+     */
+    private static final double SLOW_THRESHOLD = 0.5;
+
+    /**
+     * The content type of GWT-RPC requests.
+     */
+    private static final String GWT_RPC_CONTENT_TYPE = "text/x-gwt-rpc";
+
+    /**
+     * The number of seconds clients are asked to wait before retrying a shed request.
+     */
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    /**
+     * The largest limit that the limit is ever increased to.
+     */
+    private final int maxLimit;
+
+    /**
+     * The request paths that are never shed.
+     */
+    private final Set<String> exemptPaths;
+
+    /**
+     * The current limit before rounding, which allows for gradual decreases, stored as the bits of a double.
+     */
+    private final AtomicLong exactLimit;
+
+    /**
+     * The number of requests that are being processed.
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * The latency baseline for static files.
+     */
+    private final Baseline staticBaseline = new Baseline();
+
+    /**
+     * The latency baseline for GWT-RPC calls.
+     */
+    private final Baseline rpcBaseline = new Baseline();
+
+    /**
+     * The latency baseline for other dynamic requests.
+     */
+    private final Baseline dynamicBaseline = new Baseline();
+
+    /**
+     * The exponentially weighted moving average of the fraction of requests that were slow or failed, stored as the
+     * bits of a double.
+     */
+    private final AtomicLong slowRatio = new AtomicLong(Double.doubleToLongBits(0));
+
+    /**
+     * The number of requests that were processed.
+     */
+    private final AtomicLong accepted = new AtomicLong();
+
+    /**
+     * The number of requests that were shed.
+     */
+    private final AtomicLong shed = new AtomicLong();
+
+    /**
+     * @param maxLimit the largest number of requests that may be processed concurrently.
+     * @param exemptPaths the request paths that are never shed.
+     */
+    public ConcurrencyLimitHandler(int maxLimit, Set<String> exemptPaths) {
+        this.maxLimit = maxLimit;
+        this.exemptPaths = exemptPaths;
+        this.exactLimit = new AtomicLong(Double.doubleToLongBits(maxLimit));
+    }
+
+    /**
+     * Processes a request if the limit permits it, or sheds it otherwise.
+     *
+     * @param target the request target.
+     * @param baseRequest the Jetty request.
+     * @param request the servlet request.
+     * @param response the servlet response.
+     * @throws IOException if an I/O error occurs.
+     * @throws ServletException if a servlet error occurs.
+     */
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+        if (exemptPaths.contains(target) || InternalConnector.isInternal(baseRequest)) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+        if (!tryAcquire()) {
+            shed.incrementAndGet();
+            baseRequest.setHandled(true);
+            response.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        accepted.incrementAndGet();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            super.handle(target, baseRequest, request, response);
+            failed = response.getStatus() >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        }
+        finally {
+            int concurrency = inFlight.getAndDecrement();
+            recordSample(target, request.getContentType(), System.nanoTime() - start, concurrency, failed);
+        }
+    }
+
+    /**
+     * Reserves a place for a request if the limit permits it.
+     *
+     * @return true if a place was reserved.
+     */
+    private boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= getLimit()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Determines the route class of a request.
+     *
+     * @param target the request target.
+     * @param contentType the content type of the request, or null if it has none.
+     * @return the latency baseline for the request's route class.
+     */
+    private Baseline baselineFor(String target, String contentType) {
+        if (contentType != null && contentType.startsWith(GWT_RPC_CONTENT_TYPE)) {
+            return rpcBaseline;
+        }
+        return StaticResources.hasStaticExtension(target) ? staticBaseline : dynamicBaseline;
+    }
+
+    /**
+     * Adjusts the limit based on the outcome of a request.
+     *
+     * @param target the request target.
+     * @param contentType the content type of the request, or null if it has none.
+     * @param latency the latency of the request in nanoseconds.
+     * @param concurrency the number of requests in flight when the request completed, including the request itself.
+     * @param failed true if the request failed.
+     */
+    void recordSample(String target, String contentType, long latency, int concurrency, boolean failed) {
+        boolean slow = baselineFor(target, contentType).isSlow(latency) || failed;
+        double ratio = addSample(slowRatio, slow ? 1 : 0, SLOW_SMOOTHING);
+        int currentLimit = getLimit();
+        if (ratio > SLOW_THRESHOLD && concurrency >= currentLimit * BACKOFF_LOAD) {
+            if (slowRatio.compareAndSet(Double.doubleToLongBits(ratio), Double.doubleToLongBits(0))) {
+                adjustLimit(false);
+            }
+        }
+        else if (!slow && concurrency * 2 >= currentLimit) {
+            adjustLimit(true);
+        }
+    }
+
+    /**
+     * Increases the limit by one or decreases it by the backoff ratio, keeping it within its bounds.
+     *
+     * @param increase true if the limit should be increased.
+     */
+    private void adjustLimit(boolean increase) {
+        while (true) {
+            long bits = exactLimit.get();
+            double current = Double.longBitsToDouble(bits);
+            double updated = increase ? Math.min(maxLimit, current + 1) : Math.max(MIN_LIMIT, current * BACKOFF_RATIO);
+            if (updated == current || exactLimit.compareAndSet(bits, Double.doubleToLongBits(updated))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds a sample to an exponentially weighted moving average.
+     *
+     * @param average the average, stored as the bits of a double.
+     * @param sample the sample.
+     * @param weight the weight given to the sample.
+     * @return the updated average.
+     */
+    private static double addSample(AtomicLong average, double sample, double weight) {
+        while (true) {
+            long bits = average.get();
+            double current = Double.longBitsToDouble(bits);
+            double updated = current * (1 - weight) + sample * weight;
+            if (average.compareAndSet(bits, Double.doubleToLongBits(updated))) {
+                return updated;
+            }
+        }
+    }
+
+    /**
+     * @return the current concurrency limit.
+     */
+    public int getLimit() {
+        return (int) Double.longBitsToDouble(exactLimit.get());
+    }
+
+    /**
+     * @return the number of requests that were shed.
+     */
+    public long getShedRequests() {
+        return shed.get();
+    }
+
+    /**
+     * @return the number of requests that were processed.
+     */
+    public long getAcceptedRequests() {
+        return accepted.get();
+    }
+
+    /**
+     * Logs the request counts and the current limit.
+     *
+     * @param logger the logger to use.
+     */
+    public void reportStatistics(TreeLogger logger) {
+        logger.log(TreeLogger.INFO, "Concurrency limit: " + accepted.get() + " requests accepted, " + shed.get()
+                + " shed, current limit " + getLimit() + " of " + maxLimit);
+    }
+
+    /**
+     * The short-term and long-term average latency of one route class.
+     */
+    private static class Baseline {
+
+        /**
+         * The short-term average latency in nanoseconds, stored as the bits of a double.
+         */
+        private final AtomicLong shortAverage = new AtomicLong(Double.doubleToLongBits(0));
+
+        /**
+         * The long-term average latency in nanoseconds, stored as the bits of a double.
+         */
+        private final AtomicLong longAverage = new AtomicLong(Double.doubleToLongBits(0));
+
+        /**
+         * The number of samples measured so far.
+         */
+        private final AtomicLong samples = new AtomicLong();
+
+        /**
+         * Records a latency sample and determines whether or not requests of this route class are queueing.  Until
+         * an average has seen enough samples to cover its window, it's the plain mean of the samples so far, so that
+         * it doesn't start out biased towards the first sample.
+         *
+         * @param latency the latency of the request in nanoseconds.
+         * @return true if the short-term average latency is well above the long-term average.  No request is slow
+         *         until enough samples have been measured.
+         */
+        private boolean isSlow(long latency) {
+            long count = samples.incrementAndGet();
+            double shortTerm = addSample(shortAverage, latency, Math.max(SHORT_SMOOTHING, 1.0 / count));
+            double longTerm = addSample(longAverage, latency, Math.max(LONG_SMOOTHING, 1.0 / count));
+            return count > WARMUP_SAMPLES && shortTerm > longTerm * LATENCY_TOLERANCE;
+        }
+    }
+}
@@ -1,15 +1,26 @@
 package org.iplantc.gwt.jetty;
 
 import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.dev.util.Util;
 import com.google.gwt.thirdparty.guava.common.io.Closeables;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.eclipse.jetty.server.AbstractConnector;
+import org.eclipse.jetty.server.LocalConnector;
 import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.eclipse.jetty.server.ssl.SslSocketConnector;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 
 /**
@@ -25,6 +36,17 @@ public abstract class ConnectorFactory {
      */
     public abstract AbstractConnector getConnector(TreeLogger logger);
 
+    /**
+     * Gets the connectors to use.  Most factories produce a single connector, but some produce several connectors that
+     * share a port.  The first connector has to be started first.
+     *
+     * @param logger used to log informational messages.
+     * @return the connectors.
+     */
+    public List<AbstractConnector> getConnectors(TreeLogger logger) {
+        return Collections.singletonList(getConnector(logger));
+    }
+
     /**
      * The connector factory used to generate SSL connectors.
      */
@@ -45,15 +67,37 @@ public abstract class ConnectorFactory {
          */
         private String keystorePassword;
 
+        /**
+         * The optional SSL session and handshake settings.
+         */
+        private SslTuning sslTuning;
+
+        /**
+         * The path to the file containing the keystore password, or null if the password was given directly.
+         */
+        private String passwordFile;
+
+        /**
+         * The number of seconds between checks for keystore changes, or zero if the keystore shouldn't be reloaded.
+         */
+        private int keystoreReloadInterval;
+
         /**
          * @param clientAuth indicates which client authentication strategy to use.
          * @param keystorePath the path to the keystore to use for SSL connections.
          * @param keystorePassword the password used to access the keystore.
+         * @param sslTuning the optional SSL session and handshake settings.
+         * @param passwordFile the path to the file containing the keystore password, or null.
+         * @param keystoreReloadInterval the number of seconds between checks for keystore changes, or zero.
          */
-        private SslConnectorFactory(ClientAuth clientAuth, String keystorePath, String keystorePassword) {
+        private SslConnectorFactory(ClientAuth clientAuth, String keystorePath, String keystorePassword,
+                SslTuning sslTuning, String passwordFile, int keystoreReloadInterval) {
             this.clientAuth = clientAuth;
             this.keystorePath = keystorePath;
             this.keystorePassword = keystorePassword;
+            this.sslTuning = sslTuning;
+            this.passwordFile = passwordFile;
+            this.keystoreReloadInterval = keystoreReloadInterval;
         }
 
         /**
@@ -68,23 +112,48 @@ public abstract class ConnectorFactory {
             if (sslLogger.isLoggable(TreeLogger.Type.TRACE)) {
                 sslLogger.log(TreeLogger.Type.TRACE, "Using keystore " + keystorePath);
             }
-            KeyStore keystore = loadKeystore(sslLogger);
+            KeyStore keystore = loadKeystore(keystorePassword, sslLogger);
+            SslContextFactory contextFactory = createContextFactory(keystore, keystorePassword, sslLogger);
+            SslSocketConnector connector = clientAuth.getConnector(contextFactory, sslLogger);
+            if (keystoreReloadInterval > 0 && connector instanceof LauncherSslSocketConnector) {
+                if (new File(keystorePath).isFile()) {
+                    LauncherSslSocketConnector launcherConnector = (LauncherSslSocketConnector) connector;
+                    launcherConnector.setKeystoreReloader(new KeystoreReloader(sslLogger, launcherConnector));
+                }
+                else {
+                    sslLogger.log(TreeLogger.WARN, "Keystore reloading is only supported for keystore files");
+                }
+            }
+            return connector;
+        }
+
+        /**
+         * Creates an SSL context factory that uses a keystore for both keys and trusted certificates.
+         *
+         * @param keystore the keystore.
+         * @param password the password used to access the keystore.
+         * @param logger the logger to use when logging informational messages.
+         * @return the SSL context factory.
+         */
+        private SslContextFactory createContextFactory(KeyStore keystore, String password, TreeLogger logger) {
             SslContextFactory contextFactory = new SslContextFactory();
             contextFactory.setKeyStore(keystore);
-            contextFactory.setKeyStorePassword(keystorePassword);
+            contextFactory.setKeyStorePassword(password);
             contextFactory.setTrustStore(keystore);
-            contextFactory.setTrustStorePassword(keystorePassword);
-            return clientAuth.getConnector(contextFactory, sslLogger);
+            contextFactory.setTrustStorePassword(password);
+            sslTuning.apply(contextFactory, logger);
+            return contextFactory;
         }
 
         /**
          * Loads the selected keystore from the file system.  A runtime exception will be thrown if the keystore
          * can't be loaded.
          *
+         * @param keystorePassword the password used to access the keystore.
          * @param logger the logger to use for error messages.
          * @return the keystore.
          */
-        private KeyStore loadKeystore(TreeLogger logger) {
+        private KeyStore loadKeystore(String keystorePassword, TreeLogger logger) {
             String errorMsg = "unable to load the SSL keystore";
             char[] password = keystorePassword.toCharArray();
             FileInputStream in = null;
@@ -116,6 +185,169 @@ public abstract class ConnectorFactory {
                 }
             }
         }
+
+        /**
+         * Periodically checks the keystore and password file for changes, replacing the SSL context factory used by
+         * a connector when they change.  The new keystore is validated before the replacement takes place, so an
+         * invalid keystore never takes effect.
+         */
+        private class KeystoreReloader extends AbstractLifeCycle implements Runnable {
+
+            /**
+             * The logger to use for informational and error messages.
+             */
+            private final TreeLogger logger;
+
+            /**
+             * The connector whose SSL context factory is replaced.
+             */
+            private final LauncherSslSocketConnector connector;
+
+            /**
+             * Used to schedule the checks for keystore changes.
+             */
+            private ScheduledExecutorService scheduler;
+
+            /**
+             * Identifies the versions of the keystore and password file that are currently in use.
+             */
+            private String fingerprint;
+
+            /**
+             * @param logger the logger to use for informational and error messages.
+             * @param connector the connector whose SSL context factory is replaced.
+             */
+            private KeystoreReloader(TreeLogger logger, LauncherSslSocketConnector connector) {
+                this.logger = logger;
+                this.connector = connector;
+            }
+
+            /**
+             * Starts checking for keystore changes.
+             *
+             * @throws Exception if an error occurs.
+             */
+            @Override
+            protected void doStart() throws Exception {
+                fingerprint = fingerprint();
+                scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("keystore-reloader"));
+                scheduler.scheduleWithFixedDelay(this, keystoreReloadInterval, keystoreReloadInterval,
+                        TimeUnit.SECONDS);
+            }
+
+            /**
+             * Stops checking for keystore changes.
+             *
+             * @throws Exception if an error occurs.
+             */
+            @Override
+            protected void doStop() throws Exception {
+                scheduler.shutdownNow();
+            }
+
+            /**
+             * Reloads the keystore if it or the password file has changed since the last successful reload.  A reload
+             * that fails, for example because the keystore was read while it was being written, is tried again at the
+             * next check.
+             */
+            public void run() {
+                String currentFingerprint = fingerprint();
+                if (!currentFingerprint.equals(fingerprint) && reload()) {
+                    fingerprint = currentFingerprint;
+                }
+            }
+
+            /**
+             * Reloads the keystore, replacing the connector's SSL context factory if the keystore is valid.
+             *
+             * @return true if the SSL context factory was replaced.
+             */
+            private boolean reload() {
+                TreeLogger branch = logger.branch(TreeLogger.INFO, "Reloading keystore " + keystorePath);
+                try {
+                    String password = readPassword();
+                    KeyStore keystore = loadKeystore(password, branch);
+                    validateKeystore(keystore);
+                    SslContextFactory contextFactory = createContextFactory(keystore, password, branch);
+                    clientAuth.configure(contextFactory);
+                    contextFactory.start();
+                    SslContextFactory previous = connector.replaceSslContextFactory(contextFactory);
+                    branch.log(TreeLogger.INFO, "New connections will use the reloaded keystore");
+                    if (previous != connector.getSslContextFactory()) {
+                        stopQuietly(previous, branch);
+                    }
+                    return true;
+                }
+                catch (Exception e) {
+                    branch.log(TreeLogger.ERROR, "Unable to reload the keystore; continuing to use the previous one",
+                            e);
+                    return false;
+                }
+            }
+
+            /**
+             * Stops an SSL context factory that is no longer used for new handshakes.
+             *
+             * @param contextFactory the SSL context factory.
+             * @param branch the logger to use for error messages.
+             */
+            private void stopQuietly(SslContextFactory contextFactory, TreeLogger branch) {
+                try {
+                    contextFactory.stop();
+                }
+                catch (Exception e) {
+                    branch.log(TreeLogger.WARN, "Unable to stop the previous SSL context factory", e);
+                }
+            }
+
+            /**
+             * Reads the current keystore password.
+             *
+             * @return the password.
+             * @throws IOException if the password file can't be read.
+             */
+            private String readPassword() throws IOException {
+                if (passwordFile == null) {
+                    return keystorePassword;
+                }
+                String password = Util.readFileAsString(new File(passwordFile));
+                if (password == null) {
+                    throw new IOException("unable to read keystore password from '" + passwordFile + "'");
+                }
+                return password.trim();
+            }
+
+            /**
+             * Verifies that a keystore contains at least one private key.
+             *
+             * @param keystore the keystore.
+             * @throws KeyStoreException if the keystore doesn't contain a private key.
+             */
+            private void validateKeystore(KeyStore keystore) throws KeyStoreException {
+                for (String alias : Collections.list(keystore.aliases())) {
+                    if (keystore.isKeyEntry(alias)) {
+                        return;
+                    }
+                }
+                throw new KeyStoreException("the keystore doesn't contain a private key");
+            }
+
+            /**
+             * Builds a string that changes whenever the keystore or password file changes.
+             *
+             * @return the fingerprint.
+             */
+            private String fingerprint() {
+                StringBuilder builder = new StringBuilder();
+                File keystoreFile = new File(keystorePath);
+                builder.append(keystoreFile.lastModified()).append(':').append(keystoreFile.length());
+                if (passwordFile != null) {
+                    File file = new File(passwordFile);
+                    builder.append('|').append(file.lastModified()).append(':').append(file.length());
+                }
+                return builder.toString();
+            }
+        }
     }
 
     /**
@@ -131,7 +363,82 @@ public abstract class ConnectorFactory {
          */
         @Override
         public AbstractConnector getConnector(TreeLogger logger) {
-            return new SelectChannelConnector();
+            return new LauncherSelectChannelConnector();
+        }
+    }
+
+    /**
+     * The connector factory to use when creating several non-SSL connectors that listen to the same port with
+     * {@code SO_REUSEPORT}, each with its own acceptor and selector.
+     */
+    private static class ShardedConnectorFactory extends ConnectorFactory {
+
+        /**
+         * The number of connectors to create.
+         */
+        private int shards;
+
+        /**
+         * @param shards the number of connectors to create.
+         */
+        private ShardedConnectorFactory(int shards) {
+            this.shards = shards;
+        }
+
+        /**
+         * Creates and returns the first connector only.  Use {@link #getConnectors(TreeLogger)} to get all of them.
+         *
+         * @param logger the logger to use when creating the connector.
+         * @return the connector.
+         */
+        @Override
+        public AbstractConnector getConnector(TreeLogger logger) {
+            return getConnectors(logger).get(0);
+        }
+
+        /**
+         * Creates and returns the connectors.  If {@code SO_REUSEPORT} isn't supported, a single connector with one
+         * acceptor per shard is returned instead.
+         *
+         * @param logger the logger to use when creating the connectors.
+         * @return the connectors.
+         */
+        @Override
+        public List<AbstractConnector> getConnectors(TreeLogger logger) {
+            if (!LauncherSelectChannelConnector.isReusePortSupported()) {
+                logger.log(TreeLogger.WARN, "SO_REUSEPORT requires Java 9 or later on Linux; using one connector with "
+                        + shards + " acceptors");
+                SelectChannelConnector connector = new LauncherSelectChannelConnector();
+                connector.setAcceptors(shards);
+                return Collections.<AbstractConnector>singletonList(connector);
+            }
+            logger.log(TreeLogger.INFO, "Listening with " + shards + " SO_REUSEPORT connectors");
+            List<AbstractConnector> connectors = new ArrayList<AbstractConnector>();
+            LauncherSelectChannelConnector primary = new LauncherSelectChannelConnector(null);
+            connectors.add(primary);
+            for (int i = 1; i < shards; i++) {
+                connectors.add(new LauncherSelectChannelConnector(primary));
+            }
+            return connectors;
+        }
+    }
+
+    /**
+     * The connector factory to use when creating in-memory connectors, which accept requests from the same JVM without
+     * opening a socket.
+     */
+    private static class LoopbackConnectorFactory extends ConnectorFactory {
+
+        /**
+         * Creates and returns a new in-memory connector.
+         *
+         * @param logger the logger to use when creating the connector.
+         * @return the connector.
+         */
+        @Override
+        public AbstractConnector getConnector(TreeLogger logger) {
+            logger.log(TreeLogger.INFO, "Accepting in-memory connections only; no port will be opened");
+            return new LocalConnector();
         }
     }
 
@@ -145,6 +452,17 @@ public abstract class ConnectorFactory {
          */
         private boolean useSsl = false;
 
+        /**
+         * True if an in-memory connector should be used instead of a socket connector.
+         */
+        private boolean loopback = false;
+
+        /**
+         * The number of connectors that should share the port with {@code SO_REUSEPORT}, or zero if a single default
+         * connector should be used.
+         */
+        private int reusePortShards = 0;
+
         /**
          * The client authentication strategy.
          */
@@ -160,6 +478,21 @@ public abstract class ConnectorFactory {
          */
         private String keystorePassword;
 
+        /**
+         * The optional SSL session and handshake settings.
+         */
+        private SslTuning sslTuning = new SslTuning();
+
+        /**
+         * The path to the file containing the keystore password, or null if the password was given directly.
+         */
+        private String passwordFile;
+
+        /**
+         * The number of seconds between checks for keystore changes, or zero if the keystore shouldn't be reloaded.
+         */
+        private int keystoreReloadInterval = 0;
+
         /**
          * @param useSsl true if SSL should be used.
          * @return a reference to this builder.
@@ -169,6 +502,25 @@ public abstract class ConnectorFactory {
             return this;
         }
 
+        /**
+         * @param loopback true if an in-memory connector should be used instead of a socket connector.
+         * @return a reference to this builder.
+         */
+        public ConnectorFactoryBuilder setLoopback(boolean loopback) {
+            this.loopback = loopback;
+            return this;
+        }
+
+        /**
+         * @param reusePortShards the number of connectors that should share the port with {@code SO_REUSEPORT}, or
+         *                        zero if a single default connector should be used.
+         * @return a reference to this builder.
+         */
+        public ConnectorFactoryBuilder setReusePortShards(int reusePortShards) {
+            this.reusePortShards = reusePortShards;
+            return this;
+        }
+
         /**
          * @param clientAuth the client authentication strategy.
          * @return a reference to this builder.
@@ -196,15 +548,56 @@ public abstract class ConnectorFactory {
             return this;
         }
 
+        /**
+         * @param sslTuning the optional SSL session and handshake settings.
+         * @return a reference to this builder.
+         */
+        public ConnectorFactoryBuilder setSslTuning(SslTuning sslTuning) {
+            this.sslTuning = sslTuning;
+            return this;
+        }
+
+        /**
+         * @param passwordFile the path to the file containing the keystore password.
+         * @return a reference to this builder.
+         */
+        public ConnectorFactoryBuilder setPasswordFile(String passwordFile) {
+            this.passwordFile = passwordFile;
+            return this;
+        }
+
+        /**
+         * @param keystoreReloadInterval the number of seconds between checks for keystore changes, or zero if the
+         *                               keystore shouldn't be reloaded.
+         * @return a reference to this builder.
+         */
+        public ConnectorFactoryBuilder setKeystoreReloadInterval(int keystoreReloadInterval) {
+            this.keystoreReloadInterval = keystoreReloadInterval;
+            return this;
+        }
+
         /**
          * Builds the connector factory.
          *
          * @return the connector factory.
          */
         public ConnectorFactory build() {
-            if (useSsl) {
+            if (loopback) {
+                if (useSsl) {
+                    throw new IllegalStateException("SSL can't be used with an in-memory connector");
+                }
+                return new LoopbackConnectorFactory();
+            }
+            else if (useSsl) {
+                if (reusePortShards > 0) {
+                    throw new IllegalStateException("SO_REUSEPORT connectors can't be used with SSL");
+                }
                 validateSslParams();
-                return new SslConnectorFactory(clientAuth, keystorePath, keystorePassword);
+                return new SslConnectorFactory(clientAuth, keystorePath, keystorePassword, sslTuning, passwordFile,
+                        keystoreReloadInterval);
+            }
+            else if (reusePortShards > 0) {
+                return new ShardedConnectorFactory(reusePortShards);
             }
             else {
                 return new PlainConnectorFactory();
@@ -224,6 +617,9 @@ public abstract class ConnectorFactory {
             if (keystorePassword == null) {
                 throw new NullPointerException("the keystore password is required for SSL");
             }
+            if (sslTuning == null) {
+                throw new NullPointerException("the SSL settings are required for SSL");
+            }
         }
     }
 }
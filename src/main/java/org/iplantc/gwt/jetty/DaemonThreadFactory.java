@@ -0,0 +1,40 @@
+package org.iplantc.gwt.jetty;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread factory that creates named daemon threads, so that background work performed by the launcher never keeps
+ * the JVM running after the servlet container has been stopped.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+    /**
+     * The prefix used to build the name of each thread.
+     */
+    private final String namePrefix;
+
+    /**
+     * The number used to identify the next thread.
+     */
+    private final AtomicInteger nextThreadNumber = new AtomicInteger(1);
+
+    /**
+     * @param namePrefix the prefix used to build the name of each thread.
+     */
+    public DaemonThreadFactory(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
+    /**
+     * Creates a new daemon thread.
+     *
+     * @param runnable the task to run in the thread.
+     * @return the thread.
+     */
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, namePrefix + "-" + nextThreadNumber.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
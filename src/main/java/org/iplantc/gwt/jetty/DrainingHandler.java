@@ -0,0 +1,151 @@
+package org.iplantc.gwt.jetty;
+
+import com.google.gwt.core.ext.TreeLogger;
+import java.io.IOException;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationListener;
+import org.eclipse.jetty.http.HttpHeaderValues;
+import org.eclipse.jetty.http.HttpHeaders;
+import org.eclipse.jetty.server.AsyncContinuation;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+/**
+ * A handler that keeps track of the requests that are in flight so that the servlet container can let them finish
+ * before it stops.  Once draining begins, requests that arrive on connections that are still open are rejected with a
+ * 503 status and the connection is closed, so that the client retries them elsewhere.
+ *
+ * A request is in flight from its first dispatch until it completes, so requests that are suspended, for example
+ * while they wait in a priority lane's queue, are still counted and are allowed to finish when they're dispatched
+ * again.
+ */
+public class DrainingHandler extends HandlerWrapper {
+
+    /**
+     * The maximum number of milliseconds to wait for in-flight requests to finish.
+     */
+    private final long drainTimeout;
+
+    /**
+     * Used to synchronize access to the in-flight request count and to wait for it to reach zero.
+     */
+    private final Object drainLock = new Object();
+
+    /**
+     * The number of requests that are in flight.
+     */
+    private int inFlight = 0;
+
+    /**
+     * True once draining has begun.
+     */
+    private boolean draining = false;
+
+    /**
+     * @param drainTimeout the maximum number of milliseconds to wait for in-flight requests to finish.
+     */
+    public DrainingHandler(long drainTimeout) {
+        this.drainTimeout = drainTimeout;
+    }
+
+    /**
+     * Handles a request, rejecting it if draining has begun.
+     *
+     * @param target the request target.
+     * @param baseRequest the Jetty request.
+     * @param request the servlet request.
+     * @param response the servlet response.
+     * @throws IOException if an I/O error occurs.
+     * @throws ServletException if a servlet error occurs.
+     */
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+        AsyncContinuation continuation = baseRequest.getAsyncContinuation();
+        if (!continuation.isInitial()) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+        synchronized (drainLock) {
+            if (draining) {
+                baseRequest.setHandled(true);
+                response.setHeader(HttpHeaders.CONNECTION, HttpHeaderValues.CLOSE);
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                return;
+            }
+            inFlight++;
+        }
+        try {
+            super.handle(target, baseRequest, request, response);
+        }
+        finally {
+            if (continuation.isSuspended()) {
+                continuation.addContinuationListener(new ContinuationListener() {
+                    public void onComplete(Continuation continuation) {
+                        finished();
+                    }
+
+                    public void onTimeout(Continuation continuation) {
+                    }
+                });
+            }
+            else {
+                finished();
+            }
+        }
+    }
+
+    /**
+     * Records that a request is no longer in flight.
+     */
+    private void finished() {
+        synchronized (drainLock) {
+            if (--inFlight == 0 && draining) {
+                drainLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Begins draining and waits for the in-flight requests to finish or for the drain timeout to elapse, whichever
+     * comes first.  The connectors should be closed before this is called so that no new connections are accepted.
+     *
+     * @param logger the logger to use.
+     * @throws InterruptedException if the current thread is interrupted while waiting.
+     */
+    public void drain(TreeLogger logger) throws InterruptedException {
+        int initial;
+        int remaining;
+        synchronized (drainLock) {
+            draining = true;
+            initial = inFlight;
+            long deadline = System.currentTimeMillis() + drainTimeout;
+            long wait;
+            while (inFlight > 0 && (wait = deadline - System.currentTimeMillis()) > 0) {
+                drainLock.wait(wait);
+            }
+            remaining = inFlight;
+        }
+        if (initial > 0) {
+            logger.log(remaining > 0 ? TreeLogger.WARN : TreeLogger.INFO, "Drained " + (initial - remaining)
+                    + " in-flight requests; " + remaining + " will be aborted");
+        }
+    }
+
+    /**
+     * Resets the handler so that requests are accepted again.  This is called when the handler is started so that a
+     * restarted server doesn't reject every request.
+     *
+     * @throws Exception if the handler can't be started.
+     */
+    @Override
+    protected void doStart() throws Exception {
+        synchronized (drainLock) {
+            draining = false;
+        }
+        super.doStart();
+    }
+}
@@ -0,0 +1,107 @@
+package org.iplantc.gwt.jetty;
+
+import java.io.File;
+import java.io.IOException;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.http.HttpHeaders;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+/**
+ * A handler that sets caching headers according to GWT's file naming convention.  Files containing {@code .cache.} in
+ * their names are named after a hash of their contents, so they never change and may be cached forever.  Files
+ * containing {@code .nocache.} in their names always have to be revalidated, so they're sent with an entity tag that
+ * allows the client to revalidate them cheaply.
+ */
+public class GwtCacheHandler extends HandlerWrapper {
+
+    /**
+     * The cache control header value used for GWT files that never change.
+     */
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    /**
+     * The cache control header value used for GWT files that must always be revalidated.
+     */
+    private static final String REVALIDATE_CACHE_CONTROL = "no-cache";
+
+    /**
+     * The root directory for the web application.
+     */
+    private final File appRootDir;
+
+    /**
+     * @param appRootDir the root directory for the web application.
+     */
+    public GwtCacheHandler(File appRootDir) {
+        this.appRootDir = appRootDir;
+    }
+
+    /**
+     * Adds caching headers to the response for GWT files.
+     *
+     * @param target the request target.
+     * @param baseRequest the Jetty request.
+     * @param request the servlet request.
+     * @param response the servlet response.
+     * @throws IOException if an I/O error occurs.
+     * @throws ServletException if a servlet error occurs.
+     */
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+        if (StaticResources.isGetOrHead(request)) {
+            if (target.contains(".nocache.")) {
+                if (revalidate(target, baseRequest, request, response)) {
+                    return;
+                }
+            }
+            else if (target.contains(".cache.")) {
+                markImmutable(target, response);
+            }
+        }
+        super.handle(target, baseRequest, request, response);
+    }
+
+    /**
+     * Marks a GWT file that never changes as cacheable forever.
+     *
+     * @param target the request target.
+     * @param response the servlet response.
+     */
+    private void markImmutable(String target, HttpServletResponse response) {
+        if (StaticResources.resolve(appRootDir, target) != null) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, IMMUTABLE_CACHE_CONTROL);
+        }
+    }
+
+    /**
+     * Forces a GWT file that may change to be revalidated, answering the revalidation request directly if the client
+     * already has the current version of the file.
+     *
+     * @param target the request target.
+     * @param baseRequest the Jetty request.
+     * @param request the servlet request.
+     * @param response the servlet response.
+     * @return true if the request was handled.
+     */
+    private boolean revalidate(String target, Request baseRequest, HttpServletRequest request,
+            HttpServletResponse response) {
+        File file = StaticResources.resolve(appRootDir, target);
+        if (file == null) {
+            return false;
+        }
+        String etag = StaticResources.weakEtag(file);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, REVALIDATE_CACHE_CONTROL);
+        response.setHeader(HttpHeaders.ETAG, etag);
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            baseRequest.setHandled(true);
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,418 @@
+package org.iplantc.gwt.jetty;
+
+import com.google.gwt.core.ext.TreeLogger;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+/**
+ * A handler that records latency, payload sizes and error counts for each GWT-RPC service method.  The body of each
+ * GWT-RPC request is buffered so that the header of the serialized call can be read to find the service interface and
+ * method, and the buffered body is then replayed to the servlet.  The module base URL and policy strong name are made
+ * available as request attributes along with the method name.
+ *
+ * Errors are counted when the servlet fails or responds with a server error status.  Checked exceptions that a service
+ * method declares are returned to the client as successful responses, so they aren't counted.
+ */
+public class GwtRpcMetricsHandler extends HandlerWrapper implements StatisticsReporter {
+
+    /**
+     * The name of the request attribute containing the service interface and method name.
+     */
+    public static final String METHOD_ATTRIBUTE = "org.iplantc.gwt.jetty.rpcMethod";
+
+    /**
+     * The name of the request attribute containing the module base URL.
+     */
+    public static final String MODULE_BASE_ATTRIBUTE = "org.iplantc.gwt.jetty.rpcModuleBase";
+
+    /**
+     * The name of the request attribute containing the serialization policy strong name.
+     */
+    public static final String STRONG_NAME_ATTRIBUTE = "org.iplantc.gwt.jetty.rpcStrongName";
+
+    /**
+     * The content type of GWT-RPC requests.
+     */
+    private static final String GWT_RPC_CONTENT_TYPE = "text/x-gwt-rpc";
+
+    /**
+     * The character encoding of GWT-RPC requests.
+     */
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Request bodies larger than this aren't buffered.
+     */
+    private static final int MAX_BUFFERED_BODY = 16 * 1024 * 1024;
+
+    /**
+     * The maximum number of service methods to keep separate metrics for.  Method names come from the request body, so
+     * without a limit any client could make the handler allocate metrics for as many made-up methods as it liked.
+     */
+    static final int MAX_METHODS = 1000;
+
+    /**
+     * The name under which calls to methods beyond the limit are recorded.
+     */
+    static final String OTHER_METHODS = "(other)";
+
+    /**
+     * The metrics for each service method, keyed by the service interface and method name.
+     */
+    private final ConcurrentMap<String, MethodMetrics> metrics = new ConcurrentHashMap<String, MethodMetrics>();
+
+    /**
+     * Records the metrics for a GWT-RPC request.
+     *
+     * @param target the request target.
+     * @param baseRequest the Jetty request.
+     * @param request the servlet request.
+     * @param response the servlet response.
+     * @throws IOException if an I/O error occurs.
+     * @throws ServletException if a servlet error occurs.
+     */
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+        if (!isGwtRpc(request)) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+        byte[] body = readBody(request);
+        String[] header = parseHeader(body);
+        MethodMetrics methodMetrics = metricsFor(header == null ? "unknown" : header[2] + "." + header[3]);
+        if (header != null) {
+            request.setAttribute(MODULE_BASE_ATTRIBUTE, header[0]);
+            request.setAttribute(STRONG_NAME_ATTRIBUTE, header[1]);
+            request.setAttribute(METHOD_ATTRIBUTE, header[2] + "." + header[3]);
+        }
+        long start = System.nanoTime();
+        long initialContentCount = baseRequest.getResponse().getContentCount();
+        boolean failed = true;
+        try {
+            super.handle(target, baseRequest, new ReplayingRequest(request, body), response);
+            failed = response.getStatus() >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        }
+        finally {
+            long latency = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            long responseSize = baseRequest.getResponse().getContentCount() - initialContentCount;
+            methodMetrics.record(latency, body.length, responseSize, failed);
+        }
+    }
+
+    /**
+     * Determines whether or not a request is a GWT-RPC call that can be buffered.
+     *
+     * @param request the servlet request.
+     * @return true if the request should be instrumented.
+     */
+    private boolean isGwtRpc(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        int contentLength = request.getContentLength();
+        return "POST".equals(request.getMethod()) && contentType != null
+                && contentType.startsWith(GWT_RPC_CONTENT_TYPE) && contentLength >= 0
+                && contentLength <= MAX_BUFFERED_BODY;
+    }
+
+    /**
+     * Reads the entire body of a request.
+     *
+     * @param request the servlet request.
+     * @return the request body.
+     * @throws IOException if the body can't be read.
+     */
+    private byte[] readBody(HttpServletRequest request) throws IOException {
+        byte[] body = new byte[request.getContentLength()];
+        InputStream in = request.getInputStream();
+        int offset = 0;
+        while (offset < body.length) {
+            int count = in.read(body, offset, body.length - offset);
+            if (count < 0) {
+                byte[] truncated = new byte[offset];
+                System.arraycopy(body, 0, truncated, 0, offset);
+                return truncated;
+            }
+            offset += count;
+        }
+        return body;
+    }
+
+    /**
+     * Parses the header of a serialized GWT-RPC call.  The payload begins with the protocol version, the flags and
+     * the string table; the string table is followed by the indexes of the module base URL, the serialization policy
+     * strong name, the service interface name and the method name.
+     *
+     * @param body the request body.
+     * @return the module base URL, strong name, interface name and method name, or null if they can't be parsed.
+     */
+    String[] parseHeader(byte[] body) {
+        try {
+            String payload = new String(body, ENCODING);
+            Tokenizer tokenizer = new Tokenizer(payload);
+            tokenizer.next();
+            tokenizer.next();
+            int stringCount = Integer.parseInt(tokenizer.next());
+            // Every string is followed by a delimiter, so a larger count can't be genuine and mustn't be allocated.
+            if (stringCount > payload.length()) {
+                return null;
+            }
+            String[] strings = new String[stringCount];
+            for (int i = 0; i < stringCount; i++) {
+                strings[i] = unescape(tokenizer.next());
+            }
+            String[] header = new String[4];
+            for (int i = 0; i < header.length; i++) {
+                header[i] = strings[Integer.parseInt(tokenizer.next()) - 1];
+            }
+            return header;
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(ENCODING + " is not supported", e);
+        }
+        catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reverses the escaping that GWT-RPC applies to strings in the string table: &#92;! for a vertical bar, &#92;0 for
+     * a null character, &#92;u followed by four hexadecimal digits for other special characters and a backslash before
+     * a backslash.
+     *
+     * @param value the escaped string.
+     * @return the unescaped string.
+     * @throws NumberFormatException if a &#92;u escape isn't followed by four hexadecimal digits.
+     */
+    String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char escaped = value.charAt(++i);
+                if (escaped == 'u' && i + 4 < value.length()) {
+                    builder.append((char) Integer.parseInt(value.substring(i + 1, i + 5), 16));
+                    i += 4;
+                }
+                else {
+                    builder.append(escaped == '!' ? '|' : escaped == '0' ? '\0' : escaped);
+                }
+            }
+            else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Gets the metrics for a service method, creating them if necessary.  Once metrics exist for the maximum number of
+     * methods, calls to other methods are recorded together.
+     *
+     * @param method the service interface and method name.
+     * @return the metrics.
+     */
+    MethodMetrics metricsFor(String method) {
+        MethodMetrics methodMetrics = metrics.get(method);
+        if (methodMetrics == null && metrics.size() >= MAX_METHODS) {
+            method = OTHER_METHODS;
+            methodMetrics = metrics.get(method);
+        }
+        if (methodMetrics == null) {
+            MethodMetrics created = new MethodMetrics();
+            methodMetrics = metrics.putIfAbsent(method, created);
+            if (methodMetrics == null) {
+                methodMetrics = created;
+            }
+        }
+        return methodMetrics;
+    }
+
+    /**
+     * @return the names of the service methods that have metrics of their own, along with {@link #OTHER_METHODS} once
+     *         the limit has been reached.
+     */
+    Set<String> getMethods() {
+        return Collections.unmodifiableSet(metrics.keySet());
+    }
+
+    /**
+     * Logs the metrics for each service method, starting with the methods that took the most time in total.
+     *
+     * @param logger the logger to use.
+     */
+    public void reportStatistics(TreeLogger logger) {
+        if (metrics.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, MethodMetrics>> entries
+                = new ArrayList<Map.Entry<String, MethodMetrics>>(metrics.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, MethodMetrics>>() {
+            public int compare(Map.Entry<String, MethodMetrics> a, Map.Entry<String, MethodMetrics> b) {
+                long difference = b.getValue().latency.getSum() - a.getValue().latency.getSum();
+                return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+            }
+        });
+        TreeLogger branch = logger.branch(TreeLogger.INFO, "GWT-RPC methods by total time");
+        for (Map.Entry<String, MethodMetrics> entry : entries) {
+            MethodMetrics methodMetrics = entry.getValue();
+            TreeLogger methodBranch = branch.branch(TreeLogger.INFO, entry.getKey() + ": "
+                    + methodMetrics.latency.getCount() + " calls, " + methodMetrics.errors.get() + " errors");
+            methodBranch.log(TreeLogger.INFO, "Latency (us): " + methodMetrics.latency);
+            methodBranch.log(TreeLogger.INFO, "Request size (bytes): " + methodMetrics.requestSize);
+            methodBranch.log(TreeLogger.INFO, "Response size (bytes): " + methodMetrics.responseSize);
+        }
+    }
+
+    /**
+     * The metrics for a single service method.
+     */
+    private static class MethodMetrics {
+
+        /**
+         * The latency in microseconds.
+         */
+        private final Histogram latency = new Histogram();
+
+        /**
+         * The request body size in bytes.
+         */
+        private final Histogram requestSize = new Histogram();
+
+        /**
+         * The response body size in bytes.
+         */
+        private final Histogram responseSize = new Histogram();
+
+        /**
+         * The number of calls that failed.
+         */
+        private final AtomicLong errors = new AtomicLong();
+
+        /**
+         * Records a single call.
+         *
+         * @param latencyMicros the latency in microseconds.
+         * @param requestBytes the request body size.
+         * @param responseBytes the response body size.
+         * @param failed true if the call failed.
+         */
+        private void record(long latencyMicros, long requestBytes, long responseBytes, boolean failed) {
+            latency.record(latencyMicros);
+            requestSize.record(requestBytes);
+            responseSize.record(responseBytes);
+            if (failed) {
+                errors.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Splits a serialized GWT-RPC call into its pipe-delimited tokens one at a time.
+     */
+    private static class Tokenizer {
+
+        /**
+         * The serialized call.
+         */
+        private final String payload;
+
+        /**
+         * The position of the next token.
+         */
+        private int position = 0;
+
+        /**
+         * @param payload the serialized call.
+         */
+        private Tokenizer(String payload) {
+            this.payload = payload;
+        }
+
+        /**
+         * @return the next token.
+         * @throws IllegalArgumentException if there are no more tokens.
+         */
+        private String next() {
+            int end = payload.indexOf('|', position);
+            if (end < 0) {
+                throw new IllegalArgumentException("truncated GWT-RPC payload");
+            }
+            String token = payload.substring(position, end);
+            position = end + 1;
+            return token;
+        }
+    }
+
+    /**
+     * A request wrapper that replays a buffered request body.
+     */
+    private static class ReplayingRequest extends HttpServletRequestWrapper {
+
+        /**
+         * The buffered request body.
+         */
+        private final byte[] body;
+
+        /**
+         * @param request the request to wrap.
+         * @param body the buffered request body.
+         */
+        private ReplayingRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        /**
+         * @return a stream that reads the buffered request body.
+         */
+        @Override
+        public ServletInputStream getInputStream() {
+            final ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    return in.read(buffer, offset, length);
+                }
+            };
+        }
+
+        /**
+         * @return a reader that reads the buffered request body.
+         * @throws IOException if the character encoding isn't supported.
+         */
+        @Override
+        public BufferedReader getReader() throws IOException {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(), encoding == null ? ENCODING : encoding));
+        }
+    }
+}
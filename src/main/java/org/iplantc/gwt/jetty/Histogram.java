@@ -0,0 +1,119 @@
+package org.iplantc.gwt.jetty;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative values with power-of-two buckets.  Recording a value costs a couple of atomic
+ * increments, so histograms can be updated on every request.  Percentiles are approximate: they're reported as the
+ * upper bound of the bucket that contains them, which is never more than twice the true value.
+ */
+public class Histogram {
+
+    /**
+     * The number of buckets.  Bucket {@code i} holds values whose highest set bit is bit {@code i - 1}, so its upper
+     * bound is {@code 2^i - 1}.  Bucket zero holds zero.
+     */
+    private static final int BUCKETS = 64;
+
+    /**
+     * The number of values in each bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * The number of values recorded.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * The sum of the values recorded.
+     */
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * The largest value recorded.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value.  Negative values are recorded as zero.
+     *
+     * @param value the value.
+     */
+    public void record(long value) {
+        long clamped = Math.max(0, value);
+        counts.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(clamped));
+        count.incrementAndGet();
+        sum.addAndGet(clamped);
+        long currentMax;
+        while (clamped > (currentMax = max.get()) && !max.compareAndSet(currentMax, clamped)) {
+            // Retry until the maximum is at least as large as this value.
+        }
+    }
+
+    /**
+     * @return the number of values recorded.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the sum of the values recorded.
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * @return the mean of the values recorded, or zero if no values have been recorded.
+     */
+    public long getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() / n;
+    }
+
+    /**
+     * @return the largest value recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Estimates a percentile of the values recorded.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the upper bound of the bucket containing the percentile, or zero if no values have been recorded.
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && snapshot[i] > 0) {
+                return i == 0 ? 0 : Math.min(max.get(), i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @return a summary of the values recorded.
+     */
+    @Override
+    public String toString() {
+        return "n=" + getCount() + " mean=" + getMean() + " p50=" + getPercentile(50) + " p99=" + getPercentile(99)
+                + " max=" + getMax();
+    }
+}
@@ -0,0 +1,24 @@
+package org.iplantc.gwt.jetty;
+
+import org.eclipse.jetty.server.AbstractHttpConnection;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Request;
+
+/**
+ * The in-memory connector that the launcher uses for its own requests, such as warm-up requests and JSP
+ * precompilation requests.  Requests that arrive on this connector come from the launcher rather than from clients, so
+ * the overload protection handlers let them through without counting them against any limit.
+ */
+public class InternalConnector extends LocalConnector {
+
+    /**
+     * Determines whether or not a request was sent by the launcher itself.
+     *
+     * @param baseRequest the Jetty request.
+     * @return true if the request arrived on an internal connector.
+     */
+    public static boolean isInternal(Request baseRequest) {
+        AbstractHttpConnection connection = baseRequest.getConnection();
+        return connection != null && connection.getConnector() instanceof InternalConnector;
+    }
+}
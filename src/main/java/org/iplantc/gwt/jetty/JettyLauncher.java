@@ -5,16 +5,37 @@ import com.google.gwt.core.ext.ServletContainerLauncher;
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.dev.util.Util;
 import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.BindException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarFile;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import org.eclipse.jetty.server.AbstractConnector;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.LocalConnector;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.GzipHandler;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
 import org.eclipse.jetty.server.handler.RequestLogHandler;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.eclipse.jetty.server.ssl.SslSocketConnector;
 import org.eclipse.jetty.util.log.Log;
-import org.eclipse.jetty.webapp.WebAppContext;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
 import org.iplantc.gwt.jetty.ConnectorFactory.ConnectorFactoryBuilder;
 
 /**
@@ -33,6 +54,63 @@ public class JettyLauncher extends ServletContainerLauncher {
         System.setProperty("build.compiler", antJavaC);
     }
 
+    /**
+     * The default number of seconds between checks for keystore changes when keystore reloading is enabled.
+     */
+    private static final int DEFAULT_KEYSTORE_RELOAD_INTERVAL = 10;
+
+    /**
+     * The number of startup phases that may run concurrently.
+     */
+    private static final int STARTUP_THREADS = 4;
+
+    /**
+     * The default number of seconds to wait for in-flight requests to finish when the server stops.
+     */
+    private static final int DEFAULT_DRAIN_TIMEOUT = 10;
+
+    /**
+     * The default request paths that are exempt from overload protection.
+     */
+    private static final String DEFAULT_HEALTH_PATHS = "/health";
+
+    /**
+     * The default number of slots in the rate limiter's bucket table.
+     */
+    private static final int DEFAULT_RATE_LIMIT_SLOTS = 4096;
+
+    /**
+     * The default number of milliseconds a request may wait in a priority lane's queue.
+     */
+    private static final int DEFAULT_LANE_QUEUE_TIMEOUT = 30000;
+
+    /**
+     * The content type of GWT-RPC requests.
+     */
+    private static final String GWT_RPC_CONTENT_TYPE = "text/x-gwt-rpc";
+
+    /**
+     * The default maximum number of requests to run concurrently on virtual threads.
+     */
+    private static final int DEFAULT_VIRTUAL_THREAD_CONCURRENCY = 10000;
+
+    /**
+     * The default maximum number of free buffers kept in each size class of the connector buffer pools.
+     */
+    private static final int DEFAULT_BUFFER_POOL_SIZE = 256;
+
+    /**
+     * The maximum number of SO_REUSEPORT connectors used when the reusePort argument has no value.  Each connector
+     * holds an acceptor thread and a selector thread for as long as the server runs, so the default stays small on
+     * machines with many processors.
+     */
+    private static final int MAX_DEFAULT_REUSE_PORT_SHARDS = 8;
+
+    /**
+     * The number of pooled threads each SO_REUSEPORT connector holds: one for its acceptor and one for its selector.
+     */
+    private static final int THREADS_PER_REUSE_PORT_SHARD = 2;
+
     /**
      * Used to synchronize updates to mutable data in this class.
      */
@@ -46,7 +124,7 @@ public class JettyLauncher extends ServletContainerLauncher {
     /**
      * Indicates whether client authentication is disabled, desired or required.
      */
-    private ClientAuth clientAuth;
+    private ClientAuth clientAuth = ClientAuth.NONE;
 
     /**
      * The keystore to use for SSL connections.
@@ -58,6 +136,16 @@ public class JettyLauncher extends ServletContainerLauncher {
      */
     private String keystorePassword;
 
+    /**
+     * The path to the file containing the keystore password, or null if the password wasn't read from a file.
+     */
+    private String passwordFile = null;
+
+    /**
+     * The number of seconds between checks for keystore changes, or zero if the keystore shouldn't be reloaded.
+     */
+    private int keystoreReloadInterval = 0;
+
     /**
      * The address to listen to for incoming connections.
      */
@@ -68,6 +156,206 @@ public class JettyLauncher extends ServletContainerLauncher {
      */
     private boolean useSsl;
 
+    /**
+     * The optional SSL session and handshake settings.
+     */
+    private final SslTuning sslTuning = new SslTuning();
+
+    /**
+     * True if static files should be precompressed.
+     */
+    private boolean precompress = false;
+
+    /**
+     * The directory to store precompressed static files in, or null if the default directory should be used.
+     */
+    private File precompressDir = null;
+
+    /**
+     * The minimum size of dynamic responses to compress, or a negative number if they shouldn't be compressed.
+     */
+    private int gzipMinSize = -1;
+
+    /**
+     * The minimum size of static files to serve using memory mapped buffers, or a negative number if memory mapped
+     * buffers shouldn't be used.
+     */
+    private long zeroCopyThreshold = -1;
+
+    /**
+     * True if the server should accept in-memory connections only, without opening a port.
+     */
+    private boolean loopback = false;
+
+    /**
+     * The number of connectors that should share the port with SO_REUSEPORT, or zero if a single connector should be
+     * used.
+     */
+    private int reusePortShards = 0;
+
+    /**
+     * The size of request and response header buffers in bytes, or zero if Jetty's default should be used.
+     */
+    private int headerBufferSize = 0;
+
+    /**
+     * The size of request body buffers in bytes, or zero if Jetty's default should be used.
+     */
+    private int requestBufferSize = 0;
+
+    /**
+     * The size of response body buffers in bytes, or zero if Jetty's default should be used.
+     */
+    private int responseBufferSize = 0;
+
+    /**
+     * True if connector body buffers should be direct buffers, false if they should be heap buffers, or null if
+     * Jetty's default should be used.
+     */
+    private Boolean directBuffers = null;
+
+    /**
+     * The maximum number of free buffers kept in each size class of the shared buffer pools, or zero if each connector
+     * should use Jetty's default pools.
+     */
+    private int bufferPoolSize = 0;
+
+    /**
+     * The shared connector buffer pools, which are empty if the connectors use Jetty's default pools.
+     */
+    private final List<MeteredBuffers> bufferPools = new ArrayList<MeteredBuffers>();
+
+    /**
+     * True if the connector shouldn't be opened until the web application has started and been warmed up.
+     */
+    private boolean deferBind = false;
+
+    /**
+     * True if the "deferBind" argument was specified, in which case a warm-up script doesn't change the setting.
+     */
+    private boolean deferBindSpecified = false;
+
+    /**
+     * The script of requests used to warm up the web application, or null if it shouldn't be warmed up.  A warm-up
+     * script defers binding unless binding is explicitly not deferred.
+     */
+    private File warmupScript = null;
+
+    /**
+     * The number of seconds to wait for in-flight requests to finish when the server stops.
+     */
+    private int drainTimeout = DEFAULT_DRAIN_TIMEOUT;
+
+    /**
+     * The maximum number of requests to process concurrently, or zero if concurrency shouldn't be limited.
+     */
+    private int concurrencyLimit = 0;
+
+    /**
+     * The number of requests per second permitted for each client, or zero if the request rate shouldn't be limited.
+     */
+    private int rateLimit = 0;
+
+    /**
+     * The number of requests each client may send at once, or zero if it should be the same as the rate limit.
+     */
+    private int rateLimitBurst = 0;
+
+    /**
+     * The number of slots in the rate limiter's bucket table.
+     */
+    private int rateLimitSlots = DEFAULT_RATE_LIMIT_SLOTS;
+
+    /**
+     * The priority lanes that requests are routed into.
+     */
+    private final List<PriorityLaneHandler.Lane> lanes = new ArrayList<PriorityLaneHandler.Lane>();
+
+    /**
+     * The number of milliseconds a request may wait in a priority lane's queue.
+     */
+    private int laneQueueTimeout = DEFAULT_LANE_QUEUE_TIMEOUT;
+
+    /**
+     * The number of milliseconds a request may wait for a thread before it's rejected, zero if queue waits should only
+     * be measured, or -1 if they shouldn't be measured.
+     */
+    private int queueDeadline = -1;
+
+    /**
+     * The maximum number of requests to run concurrently on virtual threads, or zero if virtual threads shouldn't be
+     * used.
+     */
+    private int virtualThreads = 0;
+
+    /**
+     * The number of milliseconds after which a request is logged as slow, or a negative number if requests shouldn't
+     * be traced.
+     */
+    private int slowRequestThreshold = -1;
+
+    /**
+     * True if latency and payload metrics should be recorded for each GWT-RPC method.
+     */
+    private boolean rpcMetrics = false;
+
+    /**
+     * True if the WEB-INF/lib jar files should be loaded by a class loader that is kept across reloads.
+     */
+    private boolean sharedLibraries = false;
+
+    /**
+     * The request paths that are exempt from overload protection.
+     */
+    private Set<String> healthPaths = parsePathList(DEFAULT_HEALTH_PATHS);
+
+    /**
+     * True if JSPs should be precompiled at startup.
+     */
+    private boolean jspPrecompile = false;
+
+    /**
+     * The directory to store compiled JSPs in, or null if the default directory should be used.
+     */
+    private File jspCacheDir = null;
+
+    /**
+     * True if the classes loaded by the web application should be recorded and preloaded on the next start.
+     */
+    private boolean classProfile = false;
+
+    /**
+     * The class loading profile file, or null if the default file should be used.
+     */
+    private File classProfileFile = null;
+
+    /**
+     * True if sessions should be kept across reloads and restarts of the web application.
+     */
+    private boolean sessionStore = false;
+
+    /**
+     * The session store file, or null if the default file should be used.
+     */
+    private File sessionStoreFile = null;
+
+    /**
+     * The maximum number of megabytes of heap that sessions should occupy, or -1 if there's no limit.
+     */
+    private int sessionHeapLimit = -1;
+
+    /**
+     * True if the launcher should exit once the server has started and been warmed up, so that the JVM can write a
+     * class data sharing archive or class list for the classes that were loaded.  The launcher calls
+     * {@code System.exit} before {@link #start} returns, so GWT development mode never finishes starting.
+     */
+    private boolean cdsTraining = false;
+
+    /**
+     * The most recently started servlet container, which is available as soon as the server begins to start.
+     */
+    private volatile JettyServletContainer servletContainer = null;
+
     private final Map<String,ArgHandler> argHandlerFor = new HashMap<String, ArgHandler>();
 
     public JettyLauncher() {
@@ -121,6 +409,17 @@ public class JettyLauncher extends ServletContainerLauncher {
                     throw new ArgException();
                 }
                 keystorePassword = keystorePassword.trim();
+                passwordFile = value;
+            }
+        });
+
+        // The handler for the "keystoreReload" argument.
+        argHandlerFor.put("keystoreReload", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                useSsl = true;
+                keystoreReloadInterval = value == null
+                        ? DEFAULT_KEYSTORE_RELOAD_INTERVAL
+                        : parseNonNegativeInt(logger, "keystoreReload", value);
             }
         });
 
@@ -136,6 +435,402 @@ public class JettyLauncher extends ServletContainerLauncher {
                 }
             }
         });
+
+        // The handler for the "sslSessionCacheSize" argument.
+        argHandlerFor.put("sslSessionCacheSize", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                useSsl = true;
+                sslTuning.setSessionCacheSize(parseNonNegativeInt(logger, "sslSessionCacheSize", value));
+            }
+        });
+
+        // The handler for the "sslSessionTimeout" argument.
+        argHandlerFor.put("sslSessionTimeout", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                useSsl = true;
+                sslTuning.setSessionTimeout(parseNonNegativeInt(logger, "sslSessionTimeout", value));
+            }
+        });
+
+        // The handler for the "sslSessionCaching" argument.
+        argHandlerFor.put("sslSessionCaching", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                useSsl = true;
+                sslTuning.setSessionCaching(parseBoolean(logger, "sslSessionCaching", value));
+            }
+        });
+
+        // The handler for the "sslCiphers" argument.
+        argHandlerFor.put("sslCiphers", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                useSsl = true;
+                sslTuning.setCipherSuites(requireValue(logger, "sslCiphers", value));
+            }
+        });
+
+        // The handler for the "sslProtocols" argument.
+        argHandlerFor.put("sslProtocols", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                useSsl = true;
+                sslTuning.setProtocols(requireValue(logger, "sslProtocols", value));
+            }
+        });
+
+        // The handler for the "precompress" argument.
+        argHandlerFor.put("precompress", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                precompress = true;
+                precompressDir = value == null ? null : new File(value);
+            }
+        });
+
+        // The handler for the "gzipMinSize" argument.
+        argHandlerFor.put("gzipMinSize", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                gzipMinSize = parseNonNegativeInt(logger, "gzipMinSize", value);
+            }
+        });
+
+        // The handler for the "zeroCopyThreshold" argument.
+        argHandlerFor.put("zeroCopyThreshold", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                zeroCopyThreshold = parseNonNegativeInt(logger, "zeroCopyThreshold", value);
+            }
+        });
+
+        // The handler for the "jspPrecompile" argument.
+        argHandlerFor.put("jspPrecompile", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                jspPrecompile = true;
+                jspCacheDir = value == null ? null : new File(value);
+            }
+        });
+
+        // The handler for the "classProfile" argument.
+        argHandlerFor.put("classProfile", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                classProfile = true;
+                classProfileFile = value == null ? null : new File(value);
+            }
+        });
+
+        // The handler for the "sessionStore" argument.
+        argHandlerFor.put("sessionStore", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                sessionStore = true;
+                sessionStoreFile = value == null ? null : new File(value);
+            }
+        });
+
+        // The handler for the "sessionHeapLimit" argument.
+        argHandlerFor.put("sessionHeapLimit", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                sessionHeapLimit = parseNonNegativeInt(logger, "sessionHeapLimit", value);
+            }
+        });
+
+        // The handler for the "cdsTraining" argument.
+        argHandlerFor.put("cdsTraining", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                cdsTraining = parseBoolean(logger, "cdsTraining", value);
+            }
+        });
+
+        // The handler for the "drainTimeout" argument.
+        argHandlerFor.put("drainTimeout", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                drainTimeout = parseNonNegativeInt(logger, "drainTimeout", value);
+            }
+        });
+
+        // The handler for the "concurrencyLimit" argument.
+        argHandlerFor.put("concurrencyLimit", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                concurrencyLimit = parseNonNegativeInt(logger, "concurrencyLimit", value);
+            }
+        });
+
+        // The handler for the "rateLimit" argument.
+        argHandlerFor.put("rateLimit", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                rateLimit = parseNonNegativeInt(logger, "rateLimit", value);
+            }
+        });
+
+        // The handler for the "rateLimitBurst" argument.
+        argHandlerFor.put("rateLimitBurst", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                rateLimitBurst = parseNonNegativeInt(logger, "rateLimitBurst", value);
+            }
+        });
+
+        // The handler for the "rateLimitSlots" argument.
+        argHandlerFor.put("rateLimitSlots", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                rateLimitSlots = parseNonNegativeInt(logger, "rateLimitSlots", value);
+            }
+        });
+
+        // The handler for the "rpcLane" argument.
+        argHandlerFor.put("rpcLane", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                String[] components = requireValue(logger, "rpcLane", value).split(":");
+                if (components.length != 2) {
+                    logger.log(TreeLogger.ERROR, "The rpcLane argument requires a value of the form threads:queue");
+                    throw new ArgException();
+                }
+                int threads = parsePositiveInt(logger, "rpcLane", components[0]);
+                int queue = parseNonNegativeInt(logger, "rpcLane", components[1]);
+                lanes.add(new PriorityLaneHandler.Lane("rpc", threads, queue, null, GWT_RPC_CONTENT_TYPE));
+            }
+        });
+
+        // The handler for the "lane" argument.
+        argHandlerFor.put("lane", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                String[] components = requireValue(logger, "lane", value).split(":", 4);
+                if (components.length != 4) {
+                    logger.log(TreeLogger.ERROR,
+                            "The lane argument requires a value of the form name:threads:queue:pathRegex");
+                    throw new ArgException();
+                }
+                int threads = parsePositiveInt(logger, "lane", components[1]);
+                int queue = parseNonNegativeInt(logger, "lane", components[2]);
+                Pattern pathPattern;
+                try {
+                    pathPattern = Pattern.compile(components[3]);
+                }
+                catch (PatternSyntaxException e) {
+                    logger.log(TreeLogger.ERROR, "Invalid lane path pattern: " + components[3], e);
+                    throw new ArgException();
+                }
+                lanes.add(new PriorityLaneHandler.Lane(components[0], threads, queue, pathPattern, null));
+            }
+        });
+
+        // The handler for the "laneQueueTimeout" argument.
+        argHandlerFor.put("laneQueueTimeout", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                laneQueueTimeout = parsePositiveInt(logger, "laneQueueTimeout", value);
+            }
+        });
+
+        // The handler for the "queueDeadline" argument.
+        argHandlerFor.put("queueDeadline", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                queueDeadline = parseNonNegativeInt(logger, "queueDeadline", value);
+            }
+        });
+
+        // The handler for the "virtualThreads" argument.
+        argHandlerFor.put("virtualThreads", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                virtualThreads = value == null
+                        ? DEFAULT_VIRTUAL_THREAD_CONCURRENCY
+                        : parseNonNegativeInt(logger, "virtualThreads", value);
+            }
+        });
+
+        // The handler for the "slowRequestThreshold" argument.
+        argHandlerFor.put("slowRequestThreshold", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                slowRequestThreshold = parseNonNegativeInt(logger, "slowRequestThreshold", value);
+            }
+        });
+
+        // The handler for the "rpcMetrics" argument.
+        argHandlerFor.put("rpcMetrics", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                rpcMetrics = parseBoolean(logger, "rpcMetrics", value);
+            }
+        });
+
+        // The handler for the "sharedLibraries" argument.
+        argHandlerFor.put("sharedLibraries", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                sharedLibraries = parseBoolean(logger, "sharedLibraries", value);
+            }
+        });
+
+        // The handler for the "healthPaths" argument.
+        argHandlerFor.put("healthPaths", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                healthPaths = parsePathList(value == null ? "" : value);
+            }
+        });
+
+        // The handler for the "loopback" argument.
+        argHandlerFor.put("loopback", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                loopback = parseBoolean(logger, "loopback", value);
+            }
+        });
+
+        // The handler for the "reusePort" argument.
+        argHandlerFor.put("reusePort", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                reusePortShards = value == null
+                        ? Math.min(Runtime.getRuntime().availableProcessors(), MAX_DEFAULT_REUSE_PORT_SHARDS)
+                        : parseNonNegativeInt(logger, "reusePort", value);
+            }
+        });
+
+        // The handler for the "headerBufferSize" argument.
+        argHandlerFor.put("headerBufferSize", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                headerBufferSize = parseNonNegativeInt(logger, "headerBufferSize", value);
+            }
+        });
+
+        // The handler for the "requestBufferSize" argument.
+        argHandlerFor.put("requestBufferSize", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                requestBufferSize = parseNonNegativeInt(logger, "requestBufferSize", value);
+            }
+        });
+
+        // The handler for the "responseBufferSize" argument.
+        argHandlerFor.put("responseBufferSize", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                responseBufferSize = parseNonNegativeInt(logger, "responseBufferSize", value);
+            }
+        });
+
+        // The handler for the "bufferType" argument.
+        argHandlerFor.put("bufferType", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                String type = requireValue(logger, "bufferType", value);
+                if (!type.equalsIgnoreCase("direct") && !type.equalsIgnoreCase("heap")) {
+                    logger.log(TreeLogger.ERROR, "The bufferType argument requires a value of direct or heap");
+                    throw new ArgException();
+                }
+                directBuffers = type.equalsIgnoreCase("direct");
+            }
+        });
+
+        // The handler for the "bufferPool" argument.
+        argHandlerFor.put("bufferPool", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                bufferPoolSize = value == null
+                        ? DEFAULT_BUFFER_POOL_SIZE
+                        : parseNonNegativeInt(logger, "bufferPool", value);
+            }
+        });
+
+        // The handler for the "deferBind" argument.
+        argHandlerFor.put("deferBind", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                deferBind = parseBoolean(logger, "deferBind", value);
+                deferBindSpecified = true;
+            }
+        });
+
+        // The handler for the "warmup" argument.
+        argHandlerFor.put("warmup", new ArgHandler() {
+            public void handle(TreeLogger logger, String value) throws ArgException {
+                warmupScript = new File(requireValue(logger, "warmup", value));
+                if (!warmupScript.isFile()) {
+                    logger.log(TreeLogger.ERROR, "Warm-up script '" + value + "' not found");
+                    throw new ArgException();
+                }
+            }
+        });
+    }
+
+    /**
+     * Verifies that an argument has a value.
+     *
+     * @param logger the logger to use for error messages.
+     * @param name the argument name.
+     * @param value the argument value.
+     * @return the argument value.
+     * @throws ArgException if the argument has no value.
+     */
+    private String requireValue(TreeLogger logger, String name, String value) throws ArgException {
+        if (value == null || value.length() == 0) {
+            logger.log(TreeLogger.ERROR, "The " + name + " argument requires a value");
+            throw new ArgException();
+        }
+        return value;
+    }
+
+    /**
+     * Parses the value of a boolean argument.  An argument without a value is treated as true.
+     *
+     * @param logger the logger to use for error messages.
+     * @param name the argument name.
+     * @param value the argument value.
+     * @return the parsed value.
+     * @throws ArgException if the value isn't true or false.
+     */
+    private boolean parseBoolean(TreeLogger logger, String name, String value) throws ArgException {
+        if (value == null || value.equalsIgnoreCase("true")) {
+            return true;
+        }
+        else if (value.equalsIgnoreCase("false")) {
+            return false;
+        }
+        logger.log(TreeLogger.ERROR, "The " + name + " argument requires a value of true or false");
+        throw new ArgException();
+    }
+
+    /**
+     * Parses the value of a numeric argument.
+     *
+     * @param logger the logger to use for error messages.
+     * @param name the argument name.
+     * @param value the argument value.
+     * @return the parsed value.
+     * @throws ArgException if the value isn't a non-negative integer.
+     */
+    private int parseNonNegativeInt(TreeLogger logger, String name, String value) throws ArgException {
+        try {
+            int result = Integer.parseInt(value);
+            if (result >= 0) {
+                return result;
+            }
+        }
+        catch (NumberFormatException ignore) {}
+        logger.log(TreeLogger.ERROR, "The " + name + " argument requires a non-negative integer value");
+        throw new ArgException();
+    }
+
+    /**
+     * Parses the value of a numeric argument that has to be at least one.
+     *
+     * @param logger the logger to use for error messages.
+     * @param name the argument name.
+     * @param value the argument value.
+     * @return the parsed value.
+     * @throws ArgException if the value isn't a positive integer.
+     */
+    private int parsePositiveInt(TreeLogger logger, String name, String value) throws ArgException {
+        try {
+            int result = Integer.parseInt(value);
+            if (result > 0) {
+                return result;
+            }
+        }
+        catch (NumberFormatException ignore) {}
+        logger.log(TreeLogger.ERROR, "The " + name + " argument requires a positive integer value");
+        throw new ArgException();
+    }
+
+    /**
+     * Parses a semicolon-delimited list of request paths.  Semicolons are used because the arguments themselves are
+     * delimited by commas.
+     *
+     * @param value the list of request paths.
+     * @return the set of request paths.
+     */
+    private static Set<String> parsePathList(String value) {
+        Set<String> paths = new HashSet<String>();
+        for (String path : value.split(";")) {
+            if (path.trim().length() > 0) {
+                paths.add(path.trim());
+            }
+        }
+        return paths;
     }
 
     /**
@@ -193,6 +888,7 @@ public class JettyLauncher extends ServletContainerLauncher {
             logger.log(TreeLogger.ERROR, "Unexpected argument to " + getClass().getSimpleName() + ": " + name);
             throw new ArgException();
         }
+        handler.handle(logger, value);
     }
 
     /**
@@ -202,6 +898,26 @@ public class JettyLauncher extends ServletContainerLauncher {
      * @return true if the arguments are valid.
      */
     private boolean validateArguments(TreeLogger logger) {
+        if (useSsl && loopback) {
+            logger.log(TreeLogger.ERROR, "SSL can't be used with an in-memory connector");
+            return false;
+        }
+        if (loopback && reusePortShards > 0) {
+            logger.log(TreeLogger.ERROR, "SO_REUSEPORT connectors can't be used with an in-memory connector");
+            return false;
+        }
+        if (loopback && (bufferPoolSize > 0 || directBuffers != null)) {
+            logger.log(TreeLogger.ERROR, "Connector buffer pools can't be used with an in-memory connector");
+            return false;
+        }
+        if (useSsl && virtualThreads > 0) {
+            logger.log(TreeLogger.ERROR, "Virtual threads can't be used with the blocking SSL connector");
+            return false;
+        }
+        if (useSsl && reusePortShards > 0) {
+            logger.log(TreeLogger.ERROR, "SSL can't be used with SO_REUSEPORT connectors");
+            return false;
+        }
         if (useSsl) {
             if (keystore == null) {
                 logger.log(TreeLogger.ERROR, "A keystore is required to use SSL");
@@ -212,6 +928,19 @@ public class JettyLauncher extends ServletContainerLauncher {
                 return false;
             }
         }
+        if (warmupScript != null && !deferBind) {
+            if (deferBindSpecified) {
+                logger.log(TreeLogger.WARN, "Binding isn't deferred, so the warm-up requests will run while the port "
+                        + "is already accepting traffic");
+            }
+            else {
+                deferBind = true;
+            }
+        }
+        if (cdsTraining && warmupScript == null) {
+            logger.log(TreeLogger.WARN, "No warm-up script was specified; the CDS training run will only load the "
+                    + "classes used at startup");
+        }
         return true;
     }
 
@@ -245,7 +974,18 @@ public class JettyLauncher extends ServletContainerLauncher {
     }
 
     /**
-     * Starts the servlet container.
+     * Gets the most recently started servlet container.  The servlet container is available as soon as the server
+     * begins to start, so its readiness state can be monitored while this launcher's start method is still running.
+     *
+     * @return the servlet container or null if no servlet container has been started.
+     */
+    public JettyServletContainer getServletContainer() {
+        return servletContainer;
+    }
+
+    /**
+     * Starts the servlet container.  If port binding is deferred, the web application is started and warmed up before
+     * the connector is opened, so that no traffic arrives before the web application is ready for it.
      *
      * @param logger the logger to use when logging messages.
      * @param port the listen port.
@@ -255,77 +995,442 @@ public class JettyLauncher extends ServletContainerLauncher {
      * @throws Exception if an unexpected error occurs.
      */
     @Override
-    public ServletContainer start(TreeLogger logger, int port, File appRootDir) throws BindException, Exception {
-        printClassPath(logger, getClass().getClassLoader());
+    public ServletContainer start(final TreeLogger logger, final int port, File appRootDir)
+            throws BindException, Exception {
         checkStartParams(logger, port, appRootDir);
         Log.setLog(new JettyTreeLogger(logger));
-        LeakPreventor.jreLeakPrevention(logger);
         disableXmlValidation();
-        AbstractConnector connector = createConnector(logger, bindAddress, port);
-        Server server = createServer(connector);
-        WebAppContext wac = new WebAppContextWithReload(logger, appRootDir.getAbsolutePath(), "/");
-        configureServerLogging(logger, server, wac);
-        server.start();
-        server.setStopAtShutdown(true);
+        StartupProfile profile = new StartupProfile();
+        final ClassLoader launcherClassLoader = getClass().getClassLoader();
+        final StaticCompressor compressor = precompress ? createStaticCompressor(logger, appRootDir) : null;
+        List<AbstractConnector> connectors;
+        ExecutorService startupPool
+                = Executors.newFixedThreadPool(STARTUP_THREADS, new DaemonThreadFactory("launcher-startup"));
+        try {
+            List<Future<Object>> phases = new ArrayList<Future<Object>>();
+            phases.add(profile.submit(startupPool, "JRE leak prevention", new Callable<Object>() {
+                public Object call() {
+                    LeakPreventor.jreLeakPrevention(logger);
+                    return null;
+                }
+            }));
+            phases.add(profile.submit(startupPool, "Class path indexing", new Callable<Object>() {
+                public Object call() {
+                    indexClassPath(logger, launcherClassLoader);
+                    return null;
+                }
+            }));
+            if (compressor != null) {
+                phases.add(profile.submit(startupPool, "Static file precompression", new Callable<Object>() {
+                    public Object call() {
+                        compressor.compress();
+                        return null;
+                    }
+                }));
+            }
+            Future<List<AbstractConnector>> connectorPhase = profile.submit(startupPool, "Connector creation",
+                    new Callable<List<AbstractConnector>>() {
+                        public List<AbstractConnector> call() throws Exception {
+                            return createConnectors(logger, bindAddress, port);
+                        }
+                    });
+            for (Future<Object> phase : phases) {
+                StartupProfile.await(phase);
+            }
+            connectors = StartupProfile.await(connectorPhase);
+        }
+        finally {
+            startupPool.shutdown();
+        }
+        AbstractConnector connector = connectors.get(0);
+        boolean deferConnector = deferBind && !(connector instanceof LocalConnector);
+        final Server server = createServer(logger, deferConnector ? null : connectors);
+        final JspPrecompiler jspPrecompiler = jspPrecompile ? createJspPrecompiler(logger, appRootDir) : null;
+        final LocalConnector localConnector
+                = warmupScript == null && jspPrecompiler == null ? null : new InternalConnector();
+        if (localConnector != null) {
+            server.addConnector(localConnector);
+        }
+        WebAppContextWithReload wac = new WebAppContextWithReload(logger, appRootDir.getAbsolutePath(), "/");
+        wac.setSharedLibraries(sharedLibraries);
+        if (classProfile) {
+            wac.setClassLoadingProfile(
+                    classProfileFile == null ? ClassLoadingProfile.defaultFile(appRootDir) : classProfileFile);
+        }
+        if (sessionStore) {
+            wac.setSessionStore(
+                    sessionStoreFile == null ? PersistentSessionManager.defaultFile(appRootDir) : sessionStoreFile);
+        }
+        if (sessionHeapLimit >= 0) {
+            wac.setSessionHeapLimit(sessionHeapLimit * 1024L * 1024L);
+        }
+        if (jspPrecompiler != null) {
+            wac.setTempDirectory(jspPrecompiler.getScratchDir());
+            jspPrecompiler.setConnector(localConnector);
+        }
+        configureServerLogging(logger, server, wac, appRootDir, compressor);
+        final JettyServletContainer container = new JettyServletContainer(logger, server, wac, port, appRootDir);
+        servletContainer = container;
+        profile.run("Server start", new Callable<Object>() {
+            public Object call() throws Exception {
+                server.start();
+                return null;
+            }
+        });
+        container.registerShutdownHook();
+        if (jspPrecompiler != null) {
+            profile.run("JSP precompilation", new Callable<Object>() {
+                public Object call() {
+                    jspPrecompiler.precompile();
+                    return null;
+                }
+            });
+            wac.addLifeCycleListener(jspPrecompiler);
+        }
+        if (warmupScript != null) {
+            container.setReadinessState(JettyServletContainer.ReadinessState.WARMING_UP);
+            profile.run("Warm-up", new Callable<Object>() {
+                public Object call() throws Exception {
+                    new WarmUp(logger, localConnector).run(warmupScript);
+                    return null;
+                }
+            });
+        }
+        if (deferConnector) {
+            final List<AbstractConnector> deferredConnectors = connectors;
+            profile.run("Port binding", new Callable<Object>() {
+                public Object call() throws Exception {
+                    for (AbstractConnector deferredConnector : deferredConnectors) {
+                        server.addConnector(deferredConnector);
+                        deferredConnector.start();
+                    }
+                    return null;
+                }
+            });
+        }
+        // An in-memory connector has no local port, so the requested port is reported instead.
+        container.markReady(connector instanceof LocalConnector ? port : connector.getLocalPort());
         Log.setLog(new JettyTreeLogger(logger));
-        return new JettyServletContainer(logger, server, wac, connector.getLocalPort(), appRootDir);
+        profile.report(logger);
+        if (cdsTraining) {
+            finishCdsTraining(logger, container);
+        }
+        return container;
+    }
+
+    /**
+     * Ends a class data sharing training run by stopping the server and exiting, which causes the JVM to write the
+     * archive or class list requested on its command line.  This exits the whole JVM, including GWT development mode,
+     * which is still waiting for this launcher to start.
+     *
+     * @param logger the logger to use.
+     * @param container the servlet container.
+     * @throws Exception if the server can't be stopped.
+     */
+    private void finishCdsTraining(TreeLogger logger, JettyServletContainer container) throws Exception {
+        boolean dumping = false;
+        for (String jvmArg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (jvmArg.startsWith("-XX:ArchiveClassesAtExit=") || jvmArg.startsWith("-XX:DumpLoadedClassList=")) {
+                dumping = true;
+            }
+        }
+        if (!dumping) {
+            logger.log(TreeLogger.WARN, "The JVM was started without -XX:ArchiveClassesAtExit or "
+                    + "-XX:DumpLoadedClassList, so no CDS archive or class list will be written");
+        }
+        logger.log(TreeLogger.INFO, "CDS training run complete; stopping the server and exiting");
+        container.stop();
+        System.exit(0);
     }
 
-    private void printClassPath(TreeLogger logger, ClassLoader classLoader) {
+    /**
+     * Indexes the class path entries visible to a class loader.  The central directory of each jar file is read so
+     * that it's already in the file system cache when classes are loaded from the jar file.  Each entry is logged at
+     * the TRACE level.
+     *
+     * @param logger the logger to use.
+     * @param classLoader the class loader.
+     */
+    private void indexClassPath(TreeLogger logger, ClassLoader classLoader) {
         if (classLoader instanceof URLClassLoader) {
+            TreeLogger branch = logger.branch(TreeLogger.TRACE, "Indexing the class path");
+            int fileCount = 0;
             for (URL url : ((URLClassLoader) classLoader).getURLs()) {
-                logger.log(TreeLogger.WARN, url.toExternalForm());
+                int jarEntryCount = countJarEntries(url);
+                fileCount += jarEntryCount;
+                if (branch.isLoggable(TreeLogger.TRACE)) {
+                    branch.log(TreeLogger.TRACE, url.toExternalForm() + " (" + jarEntryCount + " jar entries)");
+                }
             }
+            branch.log(TreeLogger.TRACE, "Indexed " + fileCount + " jar entries");
         }
     }
 
+    /**
+     * Counts the number of entries in a jar file on the class path.
+     *
+     * @param url the class path entry.
+     * @return the number of entries, or zero if the class path entry isn't a readable local jar file.
+     */
+    private int countJarEntries(URL url) {
+        if (!url.getProtocol().equals("file") || !url.getPath().endsWith(".jar")) {
+            return 0;
+        }
+        JarFile jarFile = null;
+        try {
+            jarFile = new JarFile(new File(url.toURI()));
+            return jarFile.size();
+        }
+        catch (URISyntaxException e) {
+            return 0;
+        }
+        catch (IOException e) {
+            return 0;
+        }
+        finally {
+            if (jarFile != null) {
+                try {
+                    jarFile.close();
+                }
+                catch (IOException ignore) {}
+            }
+        }
+    }
+
+    /**
+     * Creates the compressor used to precompress static files.
+     *
+     * @param logger the logger to use.
+     * @param appRootDir the root directory for the web application.
+     * @return the compressor.
+     * @throws IOException if the default cache directory can't be used.
+     */
+    private StaticCompressor createStaticCompressor(TreeLogger logger, File appRootDir) throws IOException {
+        File cacheDir = precompressDir == null ? StaticCompressor.defaultCacheDir(appRootDir) : precompressDir;
+        return new StaticCompressor(logger, appRootDir, cacheDir);
+    }
+
+    /**
+     * Creates the precompiler used to compile JSPs at startup.
+     *
+     * @param logger the logger to use.
+     * @param appRootDir the root directory for the web application.
+     * @return the precompiler.
+     * @throws IOException if the default cache directory can't be used.
+     */
+    private JspPrecompiler createJspPrecompiler(TreeLogger logger, File appRootDir) throws IOException {
+        File cacheDir = jspCacheDir == null ? JspPrecompiler.defaultCacheDir(appRootDir) : jspCacheDir;
+        return new JspPrecompiler(logger, appRootDir, cacheDir, STARTUP_THREADS);
+    }
+
     /**
      * Configures logging for the server.
      *
      * @param logger the logger to use.
      * @param server the web server.
      * @param wac the web application context.
+     * @param appRootDir the root directory for the web application.
+     * @param compressor the compressor used to precompress static files, or null.
      */
-    private void configureServerLogging(TreeLogger logger, Server server, WebAppContext wac) {
+    private void configureServerLogging(TreeLogger logger, Server server, WebAppContextWithReload wac, File appRootDir,
+            StaticCompressor compressor) {
         RequestLogHandler logHandler = new RequestLogHandler();
         logHandler.setRequestLog(new JettyRequestLogger(logger, getBaseLogLevel()));
-        logHandler.setHandler(wac);
+        logHandler.setHandler(createHandlerChain(logger, appRootDir, wac, compressor));
         server.setHandler(logHandler);
     }
 
     /**
-     * Creates the connector to use for the server.
+     * Creates the chain of handlers that sits between the request log handler and the web application context.  The
+     * handlers are wrapped from the inside out, so the last handler wrapped is the first one to see each request.
+     *
+     * @param logger the logger to use.
+     * @param appRootDir the root directory for the web application.
+     * @param wac the web application context.
+     * @param compressor the compressor used to precompress static files, or null.
+     * @return the outermost handler in the chain.
+     */
+    private Handler createHandlerChain(TreeLogger logger, File appRootDir, WebAppContextWithReload wac,
+            StaticCompressor compressor) {
+        Handler handler = wac;
+        if (gzipMinSize >= 0) {
+            GzipHandler gzipHandler = new GzipHandler();
+            gzipHandler.setMinGzipSize(gzipMinSize);
+            handler = wrap(gzipHandler, handler);
+        }
+        MappedFileCache mappedFiles = zeroCopyThreshold >= 0 ? new MappedFileCache(zeroCopyThreshold) : null;
+        if (mappedFiles != null) {
+            handler = wrap(new ZeroCopyFileHandler(appRootDir, wac, mappedFiles), handler);
+        }
+        if (compressor != null) {
+            wac.addLifeCycleListener(compressor);
+            PrecompressedHandler precompressedHandler
+                    = new PrecompressedHandler(appRootDir, compressor, wac, mappedFiles);
+            handler = wrap(precompressedHandler, handler);
+        }
+        handler = wrap(new GwtCacheHandler(appRootDir), handler);
+        if (rpcMetrics) {
+            handler = wrap(new GwtRpcMetricsHandler(), handler);
+        }
+        if (slowRequestThreshold >= 0) {
+            RequestTracingHandler tracingHandler = new RequestTracingHandler(logger, slowRequestThreshold);
+            wac.addPermanentEventListener(tracingHandler.getServletListener());
+            handler = wrap(tracingHandler, handler);
+        }
+        if (concurrencyLimit > 0) {
+            handler = wrap(new ConcurrencyLimitHandler(concurrencyLimit, healthPaths), handler);
+        }
+        if (rateLimit > 0) {
+            int burst = rateLimitBurst > 0 ? rateLimitBurst : rateLimit;
+            handler = wrap(new RateLimitHandler(rateLimit, burst, rateLimitSlots, healthPaths), handler);
+        }
+        if (!lanes.isEmpty()) {
+            handler = wrap(new PriorityLaneHandler(lanes, laneQueueTimeout), handler);
+        }
+        if (queueDeadline >= 0) {
+            handler = wrap(new QueueDeadlineHandler(queueDeadline), handler);
+        }
+        handler = wrap(new DrainingHandler(drainTimeout * 1000L), handler);
+        return handler;
+    }
+
+    /**
+     * Wraps a handler in a handler wrapper.
+     *
+     * @param wrapper the handler wrapper.
+     * @param handler the handler to wrap.
+     * @return the handler wrapper.
+     */
+    private Handler wrap(HandlerWrapper wrapper, Handler handler) {
+        wrapper.setHandler(handler);
+        return wrapper;
+    }
+
+    /**
+     * Creates the connectors to use for the server.  There's a single connector unless several connectors share the
+     * port with SO_REUSEPORT, in which case the first one has to be started first.
      *
      * @param logger the logger to use.
      * @param bindAddress the address to listen to.
      * @param port the port to listen to.
-     * @return the connector.
+     * @return the connectors.
+     * @throws Exception if the SSL context can't be initialized.
      */
-    private AbstractConnector createConnector(TreeLogger logger, String bindAddress, int port) {
-        AbstractConnector connector = new ConnectorFactoryBuilder()
+    private List<AbstractConnector> createConnectors(TreeLogger logger, String bindAddress, int port)
+            throws Exception {
+        List<AbstractConnector> connectors = new ConnectorFactoryBuilder()
                 .setUseSsl(useSsl)
+                .setLoopback(loopback)
+                .setReusePortShards(reusePortShards)
                 .setClientAuth(clientAuth)
                 .setKeystorePath(keystore)
                 .setKeystorePassword(keystorePassword)
+                .setSslTuning(sslTuning)
+                .setPasswordFile(passwordFile)
+                .setKeystoreReloadInterval(keystoreReloadInterval)
                 .build()
-                .getConnector(logger);
-        if (bindAddress != null) {
-            connector.setHost(bindAddress);
+                .getConnectors(logger);
+        for (AbstractConnector connector : connectors) {
+            if (bindAddress != null) {
+                connector.setHost(bindAddress);
+            }
+            connector.setReuseAddress(false);
+            connector.setSoLingerTime(0);
+            if (connector instanceof SslSocketConnector) {
+                ((SslSocketConnector) connector).getSslContextFactory().start();
+            }
+        }
+        configureBuffers(logger, connectors);
+        return connectors;
+    }
+
+    /**
+     * Applies the buffer size settings to the connectors and, if buffer pooling or a buffer type was requested, makes
+     * the connectors share a pair of metered, size-classed buffer pools.
+     *
+     * @param logger the logger to use.
+     * @param connectors the connectors.
+     */
+    private void configureBuffers(TreeLogger logger, List<AbstractConnector> connectors) {
+        bufferPools.clear();
+        for (AbstractConnector connector : connectors) {
+            if (headerBufferSize > 0) {
+                connector.setRequestHeaderSize(headerBufferSize);
+                connector.setResponseHeaderSize(headerBufferSize);
+            }
+            if (requestBufferSize > 0) {
+                connector.setRequestBufferSize(requestBufferSize);
+            }
+            if (responseBufferSize > 0) {
+                connector.setResponseBufferSize(responseBufferSize);
+            }
+        }
+        AbstractConnector first = connectors.get(0);
+        if (bufferPoolSize == 0 && directBuffers == null || !(first instanceof BufferPoolConnector)) {
+            return;
         }
-        connector.setReuseAddress(false);
-        connector.setSoLingerTime(0);
-        return connector;
+        boolean direct = directBuffers == null ? first instanceof SelectChannelConnector : directBuffers;
+        int maxPooled = bufferPoolSize == 0 ? DEFAULT_BUFFER_POOL_SIZE : bufferPoolSize;
+        MeteredBuffers requestBuffers = new MeteredBuffers("request", first.getRequestHeaderSize(),
+                first.getRequestBufferSize(), direct, maxPooled);
+        MeteredBuffers responseBuffers = new MeteredBuffers("response", first.getResponseHeaderSize(),
+                first.getResponseBufferSize(), direct, maxPooled);
+        for (AbstractConnector connector : connectors) {
+            ((BufferPoolConnector) connector).setBufferPools(requestBuffers, responseBuffers);
+        }
+        bufferPools.add(requestBuffers);
+        bufferPools.add(responseBuffers);
+        logger.log(TreeLogger.TRACE, "Using pooled " + (direct ? "direct" : "heap") + " connector buffers");
     }
 
     /**
-     * Creates the Jetty server.
+     * Creates the Jetty server.  If virtual threads were requested and the JVM supports them, the server runs requests
+     * on virtual threads.  If SO_REUSEPORT connectors were requested, the default thread pool is enlarged by the
+     * threads the connectors' acceptors and selectors hold, so that they don't reduce the number of request threads.
      *
-     * @param connector the connector to use.
+     * @param logger the logger to use.
+     * @param connectors the connectors to use, or null if the connectors will be added after the server starts.
      * @return the server.
      */
-    private Server createServer(AbstractConnector connector) {
+    private Server createServer(TreeLogger logger, List<AbstractConnector> connectors) {
         Server server = new Server();
-        server.addConnector(connector);
+        ThreadPool threadPool = null;
+        if (virtualThreads > 0) {
+            if (VirtualThreadPool.isSupported()) {
+                threadPool = new VirtualThreadPool(virtualThreads);
+                if (!VirtualThreadPool.isPinningFree()) {
+                    logger.log(TreeLogger.WARN, "Virtual threads pin their carrier threads while Jetty blocks on slow "
+                            + "clients before Java 24; blocking requests may be limited to the number of carriers");
+                }
+            }
+            else {
+                logger.log(TreeLogger.WARN, "Virtual threads require Java 21 or later; using the default thread pool");
+            }
+        }
+        if (reusePortShards > 0) {
+            int reservedThreads = reusePortShards * THREADS_PER_REUSE_PORT_SHARD;
+            if (threadPool == null) {
+                QueuedThreadPool queuedThreadPool = new QueuedThreadPool();
+                queuedThreadPool.setMaxThreads(queuedThreadPool.getMaxThreads() + reservedThreads);
+                threadPool = queuedThreadPool;
+            }
+            logger.log(TreeLogger.INFO, "Reserving " + reservedThreads + " threads for the acceptors and selectors of "
+                    + reusePortShards + " SO_REUSEPORT connectors");
+        }
+        if (queueDeadline >= 0) {
+            threadPool = new TimestampingThreadPool(threadPool == null ? new QueuedThreadPool() : threadPool);
+        }
+        if (threadPool != null) {
+            server.setThreadPool(threadPool);
+        }
+        if (connectors != null) {
+            for (AbstractConnector connector : connectors) {
+                server.addConnector(connector);
+            }
+        }
+        for (MeteredBuffers bufferPool : bufferPools) {
+            server.addBean(bufferPool);
+        }
         return server;
     }
 
@@ -4,7 +4,13 @@ import com.google.gwt.core.ext.ServletContainer;
 import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.core.ext.UnableToCompleteException;
 import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.LocalConnector;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.SessionManager;
+import org.eclipse.jetty.server.session.SessionHandler;
 import org.eclipse.jetty.webapp.WebAppContext;
 import org.eclipse.jetty.util.log.Log;
 
@@ -13,7 +19,66 @@ import org.eclipse.jetty.util.log.Log;
  */
 public class JettyServletContainer extends ServletContainer {
 
-    private final int actualPort;
+    /**
+     * The readiness states of the servlet container.
+     */
+    public static enum ReadinessState {
+
+        /**
+         * The server and web application are starting.
+         */
+        STARTING,
+
+        /**
+         * The web application has started and warm-up requests are being sent to it.
+         */
+        WARMING_UP,
+
+        /**
+         * The server is accepting connections and the web application is ready for traffic.
+         */
+        READY,
+
+        /**
+         * The web application is being reloaded.
+         */
+        RELOADING,
+
+        /**
+         * The server is stopping.
+         */
+        STOPPING,
+
+        /**
+         * The server has been stopped.
+         */
+        STOPPED
+    }
+
+    /**
+     * Used to synchronize changes to the readiness state.
+     */
+    private final Object stateLock = new Object();
+
+    /**
+     * The current readiness state.
+     */
+    private ReadinessState state = ReadinessState.STARTING;
+
+    /**
+     * Stops the servlet container gracefully when the JVM exits.
+     */
+    private final Thread shutdownHook = new Thread("jetty-launcher-shutdown") {
+        @Override
+        public void run() {
+            try {
+                stop();
+            }
+            catch (UnableToCompleteException ignore) {}
+        }
+    };
+
+    private volatile int actualPort;
 
     private final File appRootDir;
 
@@ -36,14 +101,90 @@ public class JettyServletContainer extends ServletContainer {
         return actualPort;
     }
 
+    /**
+     * Sends raw HTTP requests through the server's in-memory connector, bypassing the network entirely.  The requests
+     * go through the same handler chain and web application as requests received on a socket, which makes this useful
+     * for benchmarking and testing the handler chain and servlets on their own.  An in-memory connector is available
+     * when the launcher was started with the {@code loopback} argument.  The launcher's internal connector isn't used,
+     * because requests on it bypass the overload protection handlers.
+     *
+     * @param requests one or more complete HTTP requests.
+     * @return the raw HTTP responses.
+     * @throws IllegalStateException if the server doesn't have an in-memory connector.
+     * @throws Exception if the requests can't be processed.
+     */
+    public String sendLocalRequests(String requests) throws Exception {
+        for (Connector connector : server.getConnectors()) {
+            if (connector instanceof LocalConnector && !(connector instanceof InternalConnector)) {
+                return ((LocalConnector) connector).getResponses(requests);
+            }
+        }
+        throw new IllegalStateException("the server has no in-memory connector");
+    }
+
+    /**
+     * @return the current readiness state.
+     */
+    public ReadinessState getReadinessState() {
+        synchronized (stateLock) {
+            return state;
+        }
+    }
+
+    /**
+     * Waits for the servlet container to become ready for traffic.
+     *
+     * @param timeout the maximum amount of time to wait.
+     * @param unit the unit of the timeout.
+     * @return true if the servlet container is ready or false if the timeout elapsed first.
+     * @throws InterruptedException if the current thread is interrupted while waiting.
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (stateLock) {
+            while (state != ReadinessState.READY) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(stateLock, remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Marks the servlet container as ready for traffic.
+     *
+     * @param actualPort the port the server is listening to.
+     */
+    void markReady(int actualPort) {
+        this.actualPort = actualPort;
+        setReadinessState(ReadinessState.READY);
+    }
+
+    /**
+     * Changes the readiness state, waking up any threads that are waiting for the servlet container to become ready.
+     *
+     * @param state the new readiness state.
+     */
+    void setReadinessState(ReadinessState state) {
+        synchronized (stateLock) {
+            this.state = state;
+            stateLock.notifyAll();
+        }
+    }
+
     @Override
     public void refresh() throws UnableToCompleteException {
         String msg = "Reloading web app to reflect changes in " + appRootDir.getAbsolutePath();
         TreeLogger branch = logger.branch(TreeLogger.INFO, msg);
         Log.setLog(new JettyTreeLogger(branch));
+        setReadinessState(ReadinessState.RELOADING);
         try {
             wac.stop();
             wac.start();
+            setReadinessState(ReadinessState.READY);
             branch.log(TreeLogger.INFO, "Reload completed successfully");
         }
         catch (Exception e) {
@@ -55,13 +196,69 @@ public class JettyServletContainer extends ServletContainer {
         }
     }
 
+    /**
+     * Logs the statistics collected by the server's connectors and handlers.
+     *
+     * @param logger the logger to use.
+     */
+    public void reportStatistics(TreeLogger logger) {
+        for (Connector connector : server.getConnectors()) {
+            if (connector instanceof StatisticsReporter) {
+                ((StatisticsReporter) connector).reportStatistics(logger);
+            }
+        }
+        for (Handler handler : server.getChildHandlersByClass(StatisticsReporter.class)) {
+            ((StatisticsReporter) handler).reportStatistics(logger);
+        }
+        for (MeteredBuffers bufferPool : server.getBeans(MeteredBuffers.class)) {
+            bufferPool.reportStatistics(logger);
+        }
+        for (Handler handler : server.getChildHandlersByClass(SessionHandler.class)) {
+            SessionManager sessionManager = ((SessionHandler) handler).getSessionManager();
+            if (sessionManager instanceof StatisticsReporter) {
+                ((StatisticsReporter) sessionManager).reportStatistics(logger);
+            }
+        }
+    }
+
+    /**
+     * Registers a shutdown hook that stops the servlet container gracefully when the JVM exits.
+     */
+    void registerShutdownHook() {
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Stops the servlet container gracefully.  The connectors are closed first so that no new connections are
+     * accepted, then the requests that are in flight are given a chance to finish before the server is stopped.
+     *
+     * @throws UnableToCompleteException if the server can't be stopped.
+     */
     @Override
-    public void stop() throws UnableToCompleteException {
+    public synchronized void stop() throws UnableToCompleteException {
+        if (getReadinessState() == ReadinessState.STOPPED) {
+            return;
+        }
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            }
+            catch (IllegalStateException ignore) {}
+        }
         TreeLogger branch = logger.branch(TreeLogger.INFO, "Stopping Jetty server");
         Log.setLog(new JettyTreeLogger(branch));
         try {
+            setReadinessState(ReadinessState.STOPPING);
+            reportStatistics(branch);
+            for (Connector connector : server.getConnectors()) {
+                connector.close();
+            }
+            DrainingHandler drainingHandler = server.getChildHandlerByClass(DrainingHandler.class);
+            if (drainingHandler != null) {
+                drainingHandler.drain(branch);
+            }
             server.stop();
-            server.setStopAtShutdown(false);
+            setReadinessState(ReadinessState.STOPPED);
             branch.log(TreeLogger.TRACE, "Stopped successfully");
         }
         catch (Exception e) {
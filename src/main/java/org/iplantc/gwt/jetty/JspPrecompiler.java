@@ -0,0 +1,362 @@
+package org.iplantc.gwt.jetty;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.thirdparty.guava.common.io.Closeables;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.util.component.AbstractLifeCycle.AbstractLifeCycleListener;
+import org.eclipse.jetty.util.component.LifeCycle;
+
+/**
+ * Compiles the JSPs in the web application root directory in parallel so that the first request for each JSP doesn't
+ * pay for its compilation.  The JSPs are compiled into a persistent scratch directory, which is used as the temporary
+ * directory of the web application context, and a manifest of source hashes is kept alongside it.  Only JSPs whose
+ * source hash has changed since the last pass are compiled again, so unchanged JSPs are reused across reloads and
+ * restarts.
+ *
+ * Jasper loads the compiled classes from the scratch directory, so the default cache directory is kept in the
+ * launcher's private directory, where no other local user can plant classes or a matching manifest.
+ *
+ * JSPs are compiled by sending {@code jsp_precompile} requests through an in-process connector.  When registered as a
+ * life cycle listener on the web application context, a pass runs in the background each time the web application is
+ * reloaded.
+ */
+public class JspPrecompiler extends AbstractLifeCycleListener {
+
+    /**
+     * The name of the manifest file in the cache directory.
+     */
+    private static final String MANIFEST_NAME = "jsp-manifest.properties";
+
+    /**
+     * The name of the scratch directory in the cache directory.
+     */
+    private static final String SCRATCH_DIR_NAME = "scratch";
+
+    /**
+     * The logger to use for informational and error messages.
+     */
+    private final TreeLogger logger;
+
+    /**
+     * The root directory for the web application.
+     */
+    private final File appRootDir;
+
+    /**
+     * The directory containing the scratch directory and the manifest.
+     */
+    private final File cacheDir;
+
+    /**
+     * The number of JSPs to compile concurrently.
+     */
+    private final int threads;
+
+    /**
+     * The in-process connector used to send the precompilation requests.
+     */
+    private LocalConnector connector = null;
+
+    /**
+     * Used to run precompilation passes in the background.
+     */
+    private final ExecutorService passRunner
+            = Executors.newSingleThreadExecutor(new DaemonThreadFactory("jsp-precompiler-pass"));
+
+    /**
+     * @param logger the logger to use for informational and error messages.
+     * @param appRootDir the root directory for the web application.
+     * @param cacheDir the directory containing the scratch directory and the manifest.
+     * @param threads the number of JSPs to compile concurrently.
+     */
+    public JspPrecompiler(TreeLogger logger, File appRootDir, File cacheDir, int threads) {
+        this.logger = logger;
+        this.appRootDir = appRootDir;
+        this.cacheDir = cacheDir;
+        this.threads = threads;
+    }
+
+    /**
+     * Gets the default cache directory for a web application root directory, which is in the launcher's private
+     * directory.
+     *
+     * @param appRootDir the root directory for the web application.
+     * @return the cache directory.
+     * @throws IOException if the private directory can't be used.
+     * @see PrivateFiles
+     */
+    public static File defaultCacheDir(File appRootDir) throws IOException {
+        return PrivateFiles.defaultLocation("jsp-", appRootDir, "");
+    }
+
+    /**
+     * Gets the persistent scratch directory that JSPs are compiled into, creating it if necessary.
+     *
+     * @return the scratch directory.
+     * @throws IOException if the scratch directory can't be created.
+     */
+    public File getScratchDir() throws IOException {
+        File scratchDir = new File(cacheDir, SCRATCH_DIR_NAME);
+        if (!scratchDir.isDirectory() && !scratchDir.mkdirs() && !scratchDir.isDirectory()) {
+            throw new IOException("unable to create directory " + scratchDir);
+        }
+        return scratchDir;
+    }
+
+    /**
+     * Sets the in-process connector used to send the precompilation requests.  This has to be called before the first
+     * pass runs.
+     *
+     * @param connector the in-process connector.
+     */
+    public void setConnector(LocalConnector connector) {
+        this.connector = connector;
+    }
+
+    /**
+     * Starts a precompilation pass in the background when the web application has been reloaded.
+     *
+     * @param event the life cycle that has started.
+     */
+    @Override
+    public void lifeCycleStarted(LifeCycle event) {
+        passRunner.submit(new Runnable() {
+            public void run() {
+                precompile();
+            }
+        });
+    }
+
+    /**
+     * Compiles every JSP whose source has changed since the last pass, blocking until the pass completes.  Only one
+     * pass runs at a time.
+     */
+    public synchronized void precompile() {
+        long start = System.currentTimeMillis();
+        Properties manifest = loadManifest();
+        Properties updatedManifest = new Properties();
+        List<String> stale = new ArrayList<String>();
+        List<String> paths = new ArrayList<String>();
+        findJsps(appRootDir, "/", paths);
+        for (String path : paths) {
+            String hash = hash(new File(appRootDir, path.substring(1)));
+            if (hash == null) {
+                continue;
+            }
+            if (!hash.equals(manifest.getProperty(path))) {
+                stale.add(path);
+            }
+            updatedManifest.setProperty(path, hash);
+        }
+        int failures = compileAll(stale, updatedManifest);
+        saveManifest(updatedManifest);
+        if (failures > 0) {
+            logger.log(TreeLogger.WARN, "Unable to precompile " + failures + " of " + stale.size() + " changed JSPs");
+        }
+        if (logger.isLoggable(TreeLogger.TRACE)) {
+            logger.log(TreeLogger.TRACE, "Precompiled " + (stale.size() - failures) + " of " + paths.size()
+                    + " JSPs in " + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
+    /**
+     * Compiles a list of JSPs in parallel.  JSPs that can't be compiled are removed from the manifest so that they're
+     * tried again on the next pass.
+     *
+     * @param paths the context paths of the JSPs to compile.
+     * @param manifest the manifest to update.
+     * @return the number of JSPs that couldn't be compiled.
+     */
+    private int compileAll(List<String> paths, Properties manifest) {
+        if (paths.isEmpty()) {
+            return 0;
+        }
+        ExecutorService compilerPool
+                = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("jsp-precompiler"));
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (final String path : paths) {
+                results.add(compilerPool.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        return compile(path);
+                    }
+                }));
+            }
+            int failures = 0;
+            for (int i = 0; i < paths.size(); i++) {
+                boolean compiled;
+                try {
+                    compiled = results.get(i).get();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    compiled = false;
+                }
+                catch (ExecutionException e) {
+                    logger.log(TreeLogger.WARN, "Unable to precompile " + paths.get(i), e.getCause());
+                    compiled = false;
+                }
+                if (!compiled) {
+                    manifest.remove(paths.get(i));
+                    failures++;
+                }
+            }
+            return failures;
+        }
+        finally {
+            compilerPool.shutdown();
+        }
+    }
+
+    /**
+     * Compiles a single JSP by sending a precompilation request for it.
+     *
+     * @param path the context path of the JSP.
+     * @return true if the JSP was compiled.
+     * @throws Exception if the request can't be sent.
+     */
+    private boolean compile(String path) throws Exception {
+        String request = "GET " + path + "?jsp_precompile=true HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Connection: close\r\n"
+                + "\r\n";
+        String response = connector.getResponses(request);
+        String statusLine = response == null ? "" : response.split("\r\n", 2)[0];
+        if (!statusLine.matches("HTTP/1\\.[01] 2\\d\\d.*")) {
+            logger.log(TreeLogger.WARN, "Unable to precompile " + path + ": " + statusLine);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Recursively finds all of the JSPs in a directory.
+     *
+     * @param dir the directory to search.
+     * @param contextPath the context path of the directory.
+     * @param paths the list to add the context paths of the JSPs to.
+     */
+    private void findJsps(File dir, String contextPath, List<String> paths) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                if (!child.getName().equals("META-INF")) {
+                    findJsps(child, contextPath + child.getName() + "/", paths);
+                }
+            }
+            else if (child.getName().endsWith(".jsp") && !contextPath.startsWith("/WEB-INF/")) {
+                paths.add(contextPath + child.getName());
+            }
+        }
+    }
+
+    /**
+     * Calculates the hash of a file.
+     *
+     * @param file the file.
+     * @return the hexadecimal SHA-1 hash of the file contents or null if the file can't be read.
+     */
+    private String hash(File file) {
+        InputStream in = null;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            in = new FileInputStream(file);
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, count);
+            }
+            StringBuilder builder = new StringBuilder();
+            for (byte b : digest.digest()) {
+                builder.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+            }
+            return builder.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not supported", e);
+        }
+        catch (IOException e) {
+            logger.log(TreeLogger.WARN, "Unable to read " + file, e);
+            return null;
+        }
+        finally {
+            Closeables.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Loads the manifest of source hashes from the previous pass.
+     *
+     * @return the manifest, which is empty if there was no previous pass or the scratch directory has been emptied.
+     */
+    private Properties loadManifest() {
+        Properties manifest = new Properties();
+        File file = new File(cacheDir, MANIFEST_NAME);
+        String[] compiled = new File(cacheDir, SCRATCH_DIR_NAME).list();
+        if (!file.isFile() || compiled == null || compiled.length == 0) {
+            return manifest;
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            manifest.load(in);
+        }
+        catch (IOException e) {
+            logger.log(TreeLogger.WARN, "Unable to read the JSP manifest; all JSPs will be recompiled", e);
+            manifest.clear();
+        }
+        finally {
+            Closeables.closeQuietly(in);
+        }
+        return manifest;
+    }
+
+    /**
+     * Saves the manifest of source hashes for the next pass.
+     *
+     * @param manifest the manifest.
+     */
+    private void saveManifest(Properties manifest) {
+        File file = new File(cacheDir, MANIFEST_NAME);
+        File tempFile = null;
+        OutputStream out = null;
+        try {
+            tempFile = PrivateFiles.createTempFile(file);
+            out = new FileOutputStream(tempFile);
+            manifest.store(out, "JSP source hashes");
+            out.close();
+            out = null;
+            if (file.exists() && !file.delete() || !tempFile.renameTo(file)) {
+                throw new IOException("unable to replace " + file);
+            }
+        }
+        catch (IOException e) {
+            logger.log(TreeLogger.WARN, "Unable to save the JSP manifest", e);
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+        finally {
+            Closeables.closeQuietly(out);
+        }
+    }
+}
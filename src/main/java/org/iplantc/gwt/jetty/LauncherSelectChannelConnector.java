@@ -0,0 +1,203 @@
+package org.iplantc.gwt.jetty;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import org.eclipse.jetty.io.Buffers;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+
+/**
+ * The NIO connector used by the launcher.  It can take its buffers from pools shared with other connectors, and it can
+ * open its listening socket with {@code SO_REUSEPORT}, so that several connectors can listen to the same port.  Each
+ * such connector has its own acceptor and selector, and on Linux the kernel spreads incoming connections evenly across
+ * the listening sockets, so accept and selection throughput scale with the number of connectors instead of being
+ * funneled through a single socket.
+ *
+ * {@code SO_REUSEPORT} is only available through the standard socket options API in Java 9 and later, so it's set by
+ * reflection; {@link #isReusePortSupported()} reports whether it can be used.
+ */
+public class LauncherSelectChannelConnector extends SelectChannelConnector implements BufferPoolConnector {
+
+    /**
+     * The {@code SO_REUSEPORT} socket option, or null if it isn't available.
+     */
+    private static final Object SO_REUSEPORT = findReusePortOption();
+
+    /**
+     * True if the listening socket should be opened with {@code SO_REUSEPORT}.
+     */
+    private final boolean reusePort;
+
+    /**
+     * The connector whose port this connector shares, or null if this is the first connector for the port.
+     */
+    private final LauncherSelectChannelConnector primary;
+
+    /**
+     * The pool to take request buffers from, or null if Jetty's default pool should be used.
+     */
+    private Buffers requestBuffers = null;
+
+    /**
+     * The pool to take response buffers from, or null if Jetty's default pool should be used.
+     */
+    private Buffers responseBuffers = null;
+
+    /**
+     * The port the listening socket is bound to, -1 if it hasn't been opened and -2 if it has been closed.
+     */
+    private volatile int boundPort = -1;
+
+    /**
+     * Creates a connector with a listening socket of its own.
+     */
+    public LauncherSelectChannelConnector() {
+        this.reusePort = false;
+        this.primary = null;
+    }
+
+    /**
+     * Creates a connector that opens its listening socket with {@code SO_REUSEPORT} and has a single acceptor.
+     *
+     * @param primary the connector whose port this connector shares, or null if this is the first connector for the
+     *                port.  If this connector's port is zero it listens to whatever port the primary connector was
+     *                bound to, so the primary connector has to be opened first.
+     */
+    public LauncherSelectChannelConnector(LauncherSelectChannelConnector primary) {
+        this.reusePort = true;
+        this.primary = primary;
+        setAcceptors(1);
+    }
+
+    /**
+     * @return true if listening sockets can be opened with {@code SO_REUSEPORT} and the kernel spreads connections
+     *         across them.
+     */
+    public static boolean isReusePortSupported() {
+        return SO_REUSEPORT != null && System.getProperty("os.name", "").toLowerCase().contains("linux");
+    }
+
+    /**
+     * Opens the listening socket, with {@code SO_REUSEPORT} if requested.
+     *
+     * @throws IOException if the socket can't be opened.
+     */
+    @Override
+    public void open() throws IOException {
+        if (!reusePort) {
+            super.open();
+            return;
+        }
+        synchronized (this) {
+            if (_acceptChannel != null) {
+                return;
+            }
+            int port = getPort();
+            if (port == 0 && primary != null) {
+                port = primary.getLocalPort();
+                if (port <= 0) {
+                    throw new IOException("the primary connector for the port hasn't been opened");
+                }
+            }
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            try {
+                channel.configureBlocking(true);
+                channel.socket().setReuseAddress(getReuseAddress());
+                enableReusePort(channel);
+                InetSocketAddress address = getHost() == null
+                        ? new InetSocketAddress(port)
+                        : new InetSocketAddress(getHost(), port);
+                channel.socket().bind(address, getAcceptQueueSize());
+            }
+            catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            boundPort = channel.socket().getLocalPort();
+            _acceptChannel = channel;
+        }
+    }
+
+    /**
+     * Closes the listening socket.
+     *
+     * @throws IOException if the socket can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            super.close();
+            boundPort = -2;
+        }
+    }
+
+    /**
+     * @return the port the listening socket is bound to, -1 if it hasn't been opened and -2 if it has been closed.
+     */
+    @Override
+    public int getLocalPort() {
+        return reusePort ? boundPort : super.getLocalPort();
+    }
+
+    /**
+     * Sets the buffer pools to use.  This has to be called before the connector is started.
+     *
+     * @param requestBuffers the pool to take request buffers from.
+     * @param responseBuffers the pool to take response buffers from.
+     */
+    public void setBufferPools(Buffers requestBuffers, Buffers responseBuffers) {
+        this.requestBuffers = requestBuffers;
+        this.responseBuffers = responseBuffers;
+    }
+
+    /**
+     * @return the pool to take request buffers from.
+     */
+    @Override
+    public Buffers getRequestBuffers() {
+        return requestBuffers == null ? super.getRequestBuffers() : requestBuffers;
+    }
+
+    /**
+     * @return the pool to take response buffers from.
+     */
+    @Override
+    public Buffers getResponseBuffers() {
+        return responseBuffers == null ? super.getResponseBuffers() : responseBuffers;
+    }
+
+    /**
+     * Enables {@code SO_REUSEPORT} on a listening socket.
+     *
+     * @param channel the listening socket.
+     * @throws IOException if the option isn't available or can't be set.
+     */
+    private static void enableReusePort(ServerSocketChannel channel) throws IOException {
+        if (SO_REUSEPORT == null) {
+            throw new IOException("SO_REUSEPORT requires Java 9 or later");
+        }
+        try {
+            Class<?> socketOption = Class.forName("java.net.SocketOption");
+            Method setOption = ServerSocketChannel.class.getMethod("setOption", socketOption, Object.class);
+            setOption.invoke(channel, SO_REUSEPORT, Boolean.TRUE);
+        }
+        catch (Exception e) {
+            throw new IOException("unable to enable SO_REUSEPORT", e);
+        }
+    }
+
+    /**
+     * Looks up the {@code SO_REUSEPORT} socket option.
+     *
+     * @return the socket option, or null if it isn't available.
+     */
+    private static Object findReusePortOption() {
+        try {
+            return Class.forName("java.net.StandardSocketOptions").getField("SO_REUSEPORT").get(null);
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+}
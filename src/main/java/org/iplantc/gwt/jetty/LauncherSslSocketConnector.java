@@ -0,0 +1,297 @@
+package org.iplantc.gwt.jetty;
+
+import com.google.gwt.core.ext.TreeLogger;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import org.eclipse.jetty.io.Buffers;
+import org.eclipse.jetty.server.ssl.SslSocketConnector;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+
+/**
+ * The SSL socket connector used by the launcher.  In addition to everything the standard SSL socket connector does,
+ * this connector counts full and resumed SSL handshakes so that the effectiveness of the session cache can be
+ * measured.
+ *
+ * When a keystore reloader is set, the connector listens on a plain server socket and layers SSL over each accepted
+ * socket using the current SSL context factory.  This allows the context factory to be replaced while the server is
+ * running: new handshakes use the replacement and existing connections are left alone.
+ *
+ * The connector can also take its buffers from pools shared with other connectors.
+ */
+public class LauncherSslSocketConnector extends SslSocketConnector
+        implements StatisticsReporter, BufferPoolConnector {
+
+    /**
+     * The number of handshakes that required a new session.
+     */
+    private final AtomicLong fullHandshakes = new AtomicLong();
+
+    /**
+     * The number of handshakes that resumed a cached session.
+     */
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+
+    /**
+     * The SSL context factory used for new handshakes.
+     */
+    private final AtomicReference<SslContextFactory> currentContextFactory;
+
+    /**
+     * Replaces the SSL context factory when the keystore changes, or null if the keystore isn't reloaded.
+     */
+    private LifeCycle keystoreReloader = null;
+
+    /**
+     * The pool to take request buffers from, or null if Jetty's default pool should be used.
+     */
+    private Buffers requestBuffers = null;
+
+    /**
+     * The pool to take response buffers from, or null if Jetty's default pool should be used.
+     */
+    private Buffers responseBuffers = null;
+
+    /**
+     * @param contextFactory the SSL context factory to use.
+     */
+    public LauncherSslSocketConnector(SslContextFactory contextFactory) {
+        super(contextFactory);
+        currentContextFactory = new AtomicReference<SslContextFactory>(contextFactory);
+    }
+
+    /**
+     * Sets the component that replaces the SSL context factory when the keystore changes.  The reloader is started
+     * and stopped along with this connector.  This has to be called before the connector is started.
+     *
+     * @param keystoreReloader the keystore reloader.
+     */
+    public void setKeystoreReloader(LifeCycle keystoreReloader) {
+        this.keystoreReloader = keystoreReloader;
+    }
+
+    /**
+     * Sets the buffer pools to use.  This has to be called before the connector is started.
+     *
+     * @param requestBuffers the pool to take request buffers from.
+     * @param responseBuffers the pool to take response buffers from.
+     */
+    public void setBufferPools(Buffers requestBuffers, Buffers responseBuffers) {
+        this.requestBuffers = requestBuffers;
+        this.responseBuffers = responseBuffers;
+    }
+
+    /**
+     * @return the pool to take request buffers from.
+     */
+    @Override
+    public Buffers getRequestBuffers() {
+        return requestBuffers == null ? super.getRequestBuffers() : requestBuffers;
+    }
+
+    /**
+     * @return the pool to take response buffers from.
+     */
+    @Override
+    public Buffers getResponseBuffers() {
+        return responseBuffers == null ? super.getResponseBuffers() : responseBuffers;
+    }
+
+    /**
+     * Replaces the SSL context factory used for new handshakes.  The replacement must already be started.  The caller
+     * is responsible for stopping the factory that was replaced, unless it's the one the connector was created with,
+     * which the connector stops itself.  Connections that have already been accepted keep working because their
+     * sockets hold on to the SSL context.
+     *
+     * @param contextFactory the replacement SSL context factory.
+     * @return the SSL context factory that was replaced.
+     */
+    public SslContextFactory replaceSslContextFactory(SslContextFactory contextFactory) {
+        return currentContextFactory.getAndSet(contextFactory);
+    }
+
+    /**
+     * Starts the connector and the keystore reloader.
+     *
+     * @throws Exception if the connector can't be started.
+     */
+    @Override
+    protected void doStart() throws Exception {
+        super.doStart();
+        if (keystoreReloader != null) {
+            keystoreReloader.start();
+        }
+    }
+
+    /**
+     * Stops the keystore reloader, the connector and any replacement SSL context factory.
+     *
+     * @throws Exception if the connector can't be stopped.
+     */
+    @Override
+    protected void doStop() throws Exception {
+        if (keystoreReloader != null) {
+            keystoreReloader.stop();
+        }
+        super.doStop();
+        SslContextFactory current = currentContextFactory.get();
+        if (current != getSslContextFactory()) {
+            current.stop();
+        }
+    }
+
+    /**
+     * Creates the server socket.  A plain server socket is created if the keystore is reloaded, because an SSL server
+     * socket is permanently bound to a single SSL context.
+     *
+     * @param host the host name or address to listen to.
+     * @param port the port to listen to.
+     * @param backlog the maximum length of the incoming connection queue.
+     * @return the server socket.
+     * @throws IOException if the server socket can't be created.
+     */
+    @Override
+    protected ServerSocket newServerSocket(String host, int port, int backlog) throws IOException {
+        if (keystoreReloader == null) {
+            return super.newServerSocket(host, port, backlog);
+        }
+        return host == null ? new ServerSocket(port, backlog) : new ServerSocket(port, backlog,
+                InetAddress.getByName(host));
+    }
+
+    /**
+     * Accepts a connection.  If the keystore is reloaded, SSL is layered over the accepted socket using the SSL
+     * context factory that is current at the time the connection is accepted.
+     *
+     * @param acceptorID the acceptor identifier.
+     * @throws IOException if an I/O error occurs.
+     * @throws InterruptedException if the acceptor is interrupted.
+     */
+    @Override
+    public void accept(int acceptorID) throws IOException, InterruptedException {
+        if (keystoreReloader == null) {
+            super.accept(acceptorID);
+            return;
+        }
+        Socket socket = _serverSocket.accept();
+        SSLSocket sslSocket;
+        try {
+            sslSocket = layerSsl(socket, currentContextFactory.get());
+        }
+        catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        configure(sslSocket);
+        ConnectorEndPoint connection = new SslConnectorEndPoint(sslSocket);
+        connection.dispatch();
+    }
+
+    /**
+     * Layers SSL over an accepted socket, applying the settings from an SSL context factory.
+     *
+     * @param socket the accepted socket.
+     * @param contextFactory the SSL context factory.
+     * @return the SSL socket.
+     * @throws IOException if the SSL socket can't be created.
+     */
+    private SSLSocket layerSsl(Socket socket, SslContextFactory contextFactory) throws IOException {
+        SSLSocketFactory socketFactory = contextFactory.getSslContext().getSocketFactory();
+        String host = socket.getInetAddress().getHostAddress();
+        SSLSocket sslSocket = (SSLSocket) socketFactory.createSocket(socket, host, socket.getPort(), true);
+        sslSocket.setUseClientMode(false);
+        sslSocket.setEnabledCipherSuites(contextFactory.selectCipherSuites(sslSocket.getEnabledCipherSuites(),
+                sslSocket.getSupportedCipherSuites()));
+        sslSocket.setEnabledProtocols(contextFactory.selectProtocols(sslSocket.getEnabledProtocols(),
+                sslSocket.getSupportedProtocols()));
+        if (contextFactory.getNeedClientAuth()) {
+            sslSocket.setNeedClientAuth(true);
+        }
+        else if (contextFactory.getWantClientAuth()) {
+            sslSocket.setWantClientAuth(true);
+        }
+        return sslSocket;
+    }
+
+    /**
+     * @return the number of handshakes that required a new session.
+     */
+    public long getFullHandshakes() {
+        return fullHandshakes.get();
+    }
+
+    /**
+     * @return the number of handshakes that resumed a cached session.
+     */
+    public long getResumedHandshakes() {
+        return resumedHandshakes.get();
+    }
+
+    /**
+     * Configures a newly accepted socket, registering a listener that records the type of its handshake.
+     *
+     * @param socket the socket.
+     * @throws IOException if the socket can't be configured.
+     */
+    @Override
+    protected void configure(Socket socket) throws IOException {
+        super.configure(socket);
+        if (socket instanceof SSLSocket) {
+            ((SSLSocket) socket).addHandshakeCompletedListener(new HandshakeCounter(System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Logs the handshake counts.
+     *
+     * @param logger the logger to use.
+     */
+    public void reportStatistics(TreeLogger logger) {
+        long full = fullHandshakes.get();
+        long resumed = resumedHandshakes.get();
+        long total = full + resumed;
+        long resumedPercent = total == 0 ? 0 : resumed * 100 / total;
+        logger.log(TreeLogger.INFO, "SSL handshakes: " + full + " full, " + resumed + " resumed (" + resumedPercent
+                + "% resumed)");
+    }
+
+    /**
+     * Counts a completed handshake as resumed if its session existed before the socket was accepted.
+     */
+    private class HandshakeCounter implements HandshakeCompletedListener {
+
+        /**
+         * The time the socket was accepted.
+         */
+        private final long acceptTime;
+
+        /**
+         * @param acceptTime the time the socket was accepted.
+         */
+        private HandshakeCounter(long acceptTime) {
+            this.acceptTime = acceptTime;
+        }
+
+        /**
+         * Records the type of a completed handshake.
+         *
+         * @param event the handshake completion event.
+         */
+        public void handshakeCompleted(HandshakeCompletedEvent event) {
+            if (event.getSession().getCreationTime() < acceptTime) {
+                resumedHandshakes.incrementAndGet();
+            }
+            else {
+                fullHandshakes.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.iplantc.gwt.jetty;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import org.eclipse.jetty.webapp.WebAppContext;
+
+/**
+ * A long-lived class loader for the jar files in a web application's {@code WEB-INF/lib} directory.  It sits between
+ * the bootstrap class loader and the web application class loader, so the library classes it loads survive reloads of
+ * the web application as long as the jar files don't change.  System classes are loaded from the system class loader,
+ * as they are for the web application class loader.
+ */
+public class LibraryClassLoader extends URLClassLoader {
+
+    /**
+     * The system class loader.
+     */
+    private final ClassLoader systemClassLoader;
+
+    /**
+     * The web application context, which determines which classes are system classes.
+     */
+    private final WebAppContext context;
+
+    /**
+     * A description of the jar files that can be compared to detect changes.
+     */
+    private final String fingerprint;
+
+    /**
+     * @param jars the jar files.
+     * @param systemClassLoader the system class loader.
+     * @param context the web application context.
+     * @throws MalformedURLException if a jar file can't be converted to a URL.
+     */
+    public LibraryClassLoader(File[] jars, ClassLoader systemClassLoader, WebAppContext context)
+            throws MalformedURLException {
+        super(toUrls(jars), null);
+        this.systemClassLoader = systemClassLoader;
+        this.context = context;
+        this.fingerprint = fingerprint(jars);
+    }
+
+    /**
+     * Lists the jar files in a library directory in a consistent order.
+     *
+     * @param libDir the library directory.
+     * @return the jar files.
+     */
+    public static File[] listJars(File libDir) {
+        File[] jars = libDir.listFiles();
+        if (jars == null) {
+            return new File[0];
+        }
+        Arrays.sort(jars);
+        int count = 0;
+        for (File jar : jars) {
+            String name = jar.getName().toLowerCase();
+            if (jar.isFile() && (name.endsWith(".jar") || name.endsWith(".zip"))) {
+                jars[count++] = jar;
+            }
+        }
+        return Arrays.copyOf(jars, count);
+    }
+
+    /**
+     * Describes a set of jar files by name, size and modification time.
+     *
+     * @param jars the jar files.
+     * @return the description.
+     */
+    public static String fingerprint(File[] jars) {
+        StringBuilder builder = new StringBuilder();
+        for (File jar : jars) {
+            builder.append(jar.getName()).append(':').append(jar.length()).append(':').append(jar.lastModified())
+                    .append(';');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return a description of the jar files that can be compared to detect changes.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Loads a class, using the system class loader for system classes.
+     *
+     * @param name the name of the class.
+     * @param resolve true if the class should be resolved.
+     * @return the class.
+     * @throws ClassNotFoundException if the class can't be found.
+     */
+    @Override
+    protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (context.isSystemClass(name) || name.startsWith("org.apache.jasper.")
+                || name.startsWith("org.apache.xerces.")) {
+            return systemClassLoader.loadClass(name);
+        }
+        return super.loadClass(name, resolve);
+    }
+
+    /**
+     * Converts jar files to URLs.
+     *
+     * @param jars the jar files.
+     * @return the URLs.
+     * @throws MalformedURLException if a jar file can't be converted to a URL.
+     */
+    private static URL[] toUrls(File[] jars) throws MalformedURLException {
+        URL[] urls = new URL[jars.length];
+        for (int i = 0; i < jars.length; i++) {
+            urls[i] = jars[i].toURI().toURL();
+        }
+        return urls;
+    }
+}
@@ -0,0 +1,103 @@
+package org.iplantc.gwt.jetty;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.eclipse.jetty.io.Buffer;
+import org.eclipse.jetty.io.View;
+import org.eclipse.jetty.io.nio.DirectNIOBuffer;
+
+/**
+ * Keeps memory mapped buffers for large static files so that each file is mapped once rather than on every request.
+ * A mapping is keyed by the path of the file and is replaced when the file's modification time or length changes.
+ * Each request gets its own read-only view of the shared mapping, so concurrent requests don't disturb each other's
+ * positions.
+ */
+public class MappedFileCache {
+
+    /**
+     * The maximum number of mappings to keep.  The cache is cleared when it's full, which is rare because only large
+     * files are mapped.
+     */
+    private static final int MAX_ENTRIES = 256;
+
+    /**
+     * The minimum size of files to memory map.
+     */
+    private final long threshold;
+
+    /**
+     * The mappings, keyed by absolute file path.
+     */
+    private final ConcurrentMap<String, Mapping> mappings = new ConcurrentHashMap<String, Mapping>();
+
+    /**
+     * @param threshold the minimum size of files to memory map.
+     */
+    public MappedFileCache(long threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return the minimum size of files to memory map.
+     */
+    public long getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Gets a read-only view of the mapped contents of a file, mapping the file if it hasn't been mapped since it last
+     * changed.
+     *
+     * @param file the file.
+     * @return the view.
+     * @throws IOException if the file can't be mapped.
+     */
+    public Buffer get(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        Mapping mapping = mappings.get(path);
+        if (mapping == null || mapping.lastModified != lastModified || mapping.length != length) {
+            if (mappings.size() >= MAX_ENTRIES) {
+                mappings.clear();
+            }
+            mapping = new Mapping(lastModified, length, new DirectNIOBuffer(file));
+            mappings.put(path, mapping);
+        }
+        return new View(mapping.buffer);
+    }
+
+    /**
+     * A mapped file along with the attributes it had when it was mapped.
+     */
+    private static class Mapping {
+
+        /**
+         * The modification time of the file when it was mapped.
+         */
+        private final long lastModified;
+
+        /**
+         * The length of the file when it was mapped.
+         */
+        private final long length;
+
+        /**
+         * The mapped contents of the file.
+         */
+        private final Buffer buffer;
+
+        /**
+         * @param lastModified the modification time of the file when it was mapped.
+         * @param length the length of the file when it was mapped.
+         * @param buffer the mapped contents of the file.
+         */
+        private Mapping(long lastModified, long length, Buffer buffer) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package org.iplantc.gwt.jetty;
+
+import com.google.gwt.core.ext.TreeLogger;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.jetty.io.Buffer;
+import org.eclipse.jetty.io.Buffers;
+import org.eclipse.jetty.io.nio.DirectNIOBuffer;
+import org.eclipse.jetty.io.nio.IndirectNIOBuffer;
+
+/**
+ * A pool of connector buffers that is shared by every connection and keeps a separate free list for each size class.
+ * Header buffers are always allocated on the heap, because headers are parsed byte by byte.  Body buffers are either
+ * direct or heap buffers, and come in the configured buffer size and in several power-of-two multiples of it, so that
+ * the larger buffers a connection asks for when it writes a large response are reused as well.  Requests for larger
+ * buffers than that are allocated without pooling.
+ *
+ * Every request for a buffer is counted as a hit if it was served from a free list or a miss if a buffer had to be
+ * allocated, and returned buffers are counted as dropped if their free list was full.
+ */
+public class MeteredBuffers implements Buffers, StatisticsReporter {
+
+    /**
+     * The number of body buffer size classes.  The largest class holds buffers {@code 2^(BODY_SIZE_CLASSES - 1)}
+     * times the configured buffer size.
+     */
+    private static final int BODY_SIZE_CLASSES = 4;
+
+    /**
+     * The name of the pool, used when reporting statistics.
+     */
+    private final String name;
+
+    /**
+     * The size class for header buffers.
+     */
+    private final SizeClass headers;
+
+    /**
+     * The size classes for body buffers, from smallest to largest.
+     */
+    private final SizeClass[] bodies = new SizeClass[BODY_SIZE_CLASSES];
+
+    /**
+     * The number of requests for buffers larger than the largest size class.
+     */
+    private final AtomicLong unpooled = new AtomicLong();
+
+    /**
+     * @param name the name of the pool, used when reporting statistics.
+     * @param headerSize the size of header buffers.
+     * @param bufferSize the size of body buffers.
+     * @param direct true if body buffers should be direct buffers.
+     * @param maxPooled the maximum number of free buffers kept in each size class.
+     */
+    public MeteredBuffers(String name, int headerSize, int bufferSize, boolean direct, int maxPooled) {
+        this.name = name;
+        this.headers = new SizeClass(headerSize, false, maxPooled);
+        for (int i = 0; i < BODY_SIZE_CLASSES; i++) {
+            bodies[i] = new SizeClass(bufferSize << i, direct, maxPooled);
+        }
+    }
+
+    /**
+     * @return a header buffer.
+     */
+    public Buffer getHeader() {
+        return headers.take();
+    }
+
+    /**
+     * @return a body buffer of the configured size.
+     */
+    public Buffer getBuffer() {
+        return bodies[0].take();
+    }
+
+    /**
+     * Gets a buffer with at least the given capacity.
+     *
+     * @param size the minimum capacity.
+     * @return the buffer.
+     */
+    public Buffer getBuffer(int size) {
+        if (size == headers.size) {
+            return headers.take();
+        }
+        for (SizeClass sizeClass : bodies) {
+            if (size <= sizeClass.size) {
+                return sizeClass.take();
+            }
+        }
+        unpooled.incrementAndGet();
+        return bodies[0].direct ? new DirectNIOBuffer(size) : new IndirectNIOBuffer(size);
+    }
+
+    /**
+     * Returns a buffer to the free list for its size class.
+     *
+     * @param buffer the buffer.
+     */
+    public void returnBuffer(Buffer buffer) {
+        buffer.clear();
+        if (buffer.isVolatile() || buffer.isImmutable()) {
+            return;
+        }
+        boolean direct = buffer instanceof DirectNIOBuffer;
+        if (headers.accepts(buffer, direct)) {
+            headers.give(buffer);
+            return;
+        }
+        for (SizeClass sizeClass : bodies) {
+            if (sizeClass.accepts(buffer, direct)) {
+                sizeClass.give(buffer);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Logs the hit, miss and drop counts for each size class.
+     *
+     * @param logger the logger to use.
+     */
+    public void reportStatistics(TreeLogger logger) {
+        TreeLogger branch = logger.branch(TreeLogger.INFO, "Buffer pool " + name + " (" + unpooled.get()
+                + " unpooled allocations)");
+        headers.report(branch, "Headers");
+        for (SizeClass sizeClass : bodies) {
+            sizeClass.report(branch, sizeClass.direct ? "Direct" : "Heap");
+        }
+    }
+
+    /**
+     * A free list of buffers of a single size and type.
+     */
+    private static class SizeClass {
+
+        /**
+         * The capacity of the buffers.
+         */
+        private final int size;
+
+        /**
+         * True if the buffers are direct buffers.
+         */
+        private final boolean direct;
+
+        /**
+         * The maximum number of free buffers to keep.
+         */
+        private final int maxPooled;
+
+        /**
+         * The free buffers.
+         */
+        private final Queue<Buffer> free = new ConcurrentLinkedQueue<Buffer>();
+
+        /**
+         * The number of free buffers.  This is tracked separately because counting the queue is slow.
+         */
+        private final AtomicInteger freeCount = new AtomicInteger();
+
+        /**
+         * The number of requests that were served from the free list.
+         */
+        private final AtomicLong hits = new AtomicLong();
+
+        /**
+         * The number of requests that required a new buffer.
+         */
+        private final AtomicLong misses = new AtomicLong();
+
+        /**
+         * The number of returned buffers that were discarded because the free list was full.
+         */
+        private final AtomicLong drops = new AtomicLong();
+
+        /**
+         * @param size the capacity of the buffers.
+         * @param direct true if the buffers are direct buffers.
+         * @param maxPooled the maximum number of free buffers to keep.
+         */
+        private SizeClass(int size, boolean direct, int maxPooled) {
+            this.size = size;
+            this.direct = direct;
+            this.maxPooled = maxPooled;
+        }
+
+        /**
+         * @return a free buffer, or a new buffer if there are no free buffers.
+         */
+        private Buffer take() {
+            Buffer buffer = free.poll();
+            if (buffer != null) {
+                freeCount.decrementAndGet();
+                hits.incrementAndGet();
+                return buffer;
+            }
+            misses.incrementAndGet();
+            return direct ? new DirectNIOBuffer(size) : new IndirectNIOBuffer(size);
+        }
+
+        /**
+         * Determines whether or not a buffer belongs to this size class.
+         *
+         * @param buffer the buffer.
+         * @param directBuffer true if the buffer is a direct buffer.
+         * @return true if the buffer has the capacity and type of this size class.
+         */
+        private boolean accepts(Buffer buffer, boolean directBuffer) {
+            return buffer.capacity() == size && directBuffer == direct;
+        }
+
+        /**
+         * Adds a buffer to the free list unless the free list is full.
+         *
+         * @param buffer the buffer.
+         */
+        private void give(Buffer buffer) {
+            if (freeCount.incrementAndGet() <= maxPooled) {
+                free.offer(buffer);
+            }
+            else {
+                freeCount.decrementAndGet();
+                drops.incrementAndGet();
+            }
+        }
+
+        /**
+         * Logs the statistics for this size class.
+         *
+         * @param logger the logger to use.
+         * @param label describes the buffers.
+         */
+        private void report(TreeLogger logger, String label) {
+            logger.log(TreeLogger.INFO, label + " " + size + " bytes: " + hits.get() + " hits, " + misses.get()
+                    + " misses, " + drops.get() + " dropped, " + freeCount.get() + " free");
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package org.iplantc.gwt.jetty;
+
+import com.google.gwt.thirdparty.guava.common.io.Closeables;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.resource.Resource;
+import org.eclipse.jetty.webapp.MetaInfConfiguration;
+import org.eclipse.jetty.webapp.WebAppContext;
+
+/**
+ * A replacement for {@link MetaInfConfiguration} that scans the container jars and the jars in {@code WEB-INF/lib}
+ * for web fragments, static resource directories and TLDs concurrently rather than one jar at a time.  The results for
+ * each local jar file are cached, keyed by the path, size and modification time of the jar file, so when the web
+ * application is reloaded only the jar files that have changed are scanned again.
+ *
+ * The results are always added to the web application context in jar order so that fragment ordering isn't affected
+ * by the order in which the scans complete.
+ */
+public class ParallelMetaInfConfiguration extends MetaInfConfiguration {
+
+    /**
+     * The logger used by Jetty.
+     */
+    private static final Logger LOG = Log.getLogger(ParallelMetaInfConfiguration.class);
+
+    /**
+     * The name of the web fragment descriptor.
+     */
+    private static final String WEB_FRAGMENT = "META-INF/web-fragment.xml";
+
+    /**
+     * The name of the static resource directory.
+     */
+    private static final String RESOURCES = "META-INF/resources/";
+
+    /**
+     * The most recent scan results for local jar files, keyed by the path of the jar file.  Each result records the
+     * size and modification time of the jar file when it was scanned.  The cache is shared by every web application
+     * context so that it survives reloads.
+     */
+    private static final ConcurrentMap<String, ScanResult> CACHE = new ConcurrentHashMap<String, ScanResult>();
+
+    /**
+     * Scans the jar files and adds the results to the web application context.
+     *
+     * @param context the web application context.
+     * @throws Exception if the jar files can't be scanned.
+     */
+    @Override
+    public void preConfigure(WebAppContext context) throws Exception {
+        List<Resource> jars = new ArrayList<Resource>();
+        jars.addAll(context.getMetaData().getOrderedContainerJars());
+        jars.addAll(context.getMetaData().getWebInfJars());
+        if (jars.isEmpty()) {
+            return;
+        }
+        int threads = Math.min(jars.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService scanPool = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("meta-inf-scanner"));
+        try {
+            List<Future<ScanResult>> results = new ArrayList<Future<ScanResult>>();
+            for (final Resource jar : jars) {
+                results.add(scanPool.submit(new Callable<ScanResult>() {
+                    public ScanResult call() throws IOException {
+                        return scan(jar);
+                    }
+                }));
+            }
+            for (int i = 0; i < jars.size(); i++) {
+                try {
+                    apply(context, jars.get(i), results.get(i).get());
+                }
+                catch (ExecutionException e) {
+                    LOG.warn("Unable to scan " + jars.get(i), e.getCause());
+                }
+            }
+        }
+        finally {
+            scanPool.shutdown();
+        }
+    }
+
+    /**
+     * Adds the results of a jar file scan to the web application context.
+     *
+     * @param context the web application context.
+     * @param jar the jar file.
+     * @param result the scan result.
+     * @throws Exception if a resource in the jar file can't be created.
+     */
+    private void apply(WebAppContext context, Resource jar, ScanResult result) throws Exception {
+        if (result.hasWebFragment && context.isConfigurationDiscovered()) {
+            addResource(context, METAINF_FRAGMENTS, jar);
+        }
+        if (result.hasResources && context.isConfigurationDiscovered()) {
+            addResource(context, METAINF_RESOURCES, Resource.newResource("jar:" + jar.getURL()
+                    + "!/META-INF/resources"));
+        }
+        for (String tld : result.tlds) {
+            addResource(context, METAINF_TLDS, Resource.newResource("jar:" + jar.getURL() + "!/" + tld));
+        }
+    }
+
+    /**
+     * Scans a jar file, using the cached result if the jar file hasn't changed since it was last scanned.
+     *
+     * @param jar the jar file.
+     * @return the scan result.
+     * @throws IOException if the jar file can't be read.
+     */
+    private ScanResult scan(Resource jar) throws IOException {
+        File file = jar.getFile();
+        if (file == null) {
+            return scanStream(jar);
+        }
+        String path = file.getAbsolutePath();
+        String fingerprint = file.length() + ":" + file.lastModified();
+        ScanResult result = CACHE.get(path);
+        if (result == null || !result.fingerprint.equals(fingerprint)) {
+            result = scanFile(file, fingerprint);
+            CACHE.put(path, result);
+        }
+        return result;
+    }
+
+    /**
+     * Scans a local jar file using its central directory.
+     *
+     * @param file the jar file.
+     * @param fingerprint the size and modification time of the jar file.
+     * @return the scan result.
+     * @throws IOException if the jar file can't be read.
+     */
+    private ScanResult scanFile(File file, String fingerprint) throws IOException {
+        ScanResult result = new ScanResult(fingerprint);
+        JarFile jarFile = new JarFile(file);
+        try {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                result.add(entries.nextElement().getName());
+            }
+        }
+        finally {
+            jarFile.close();
+        }
+        return result;
+    }
+
+    /**
+     * Scans a jar file that isn't available as a local file by reading it sequentially.  These results aren't cached.
+     *
+     * @param jar the jar file.
+     * @return the scan result.
+     * @throws IOException if the jar file can't be read.
+     */
+    private ScanResult scanStream(Resource jar) throws IOException {
+        ScanResult result = new ScanResult(null);
+        InputStream in = null;
+        try {
+            in = jar.getInputStream();
+            JarInputStream jarIn = new JarInputStream(in);
+            JarEntry entry;
+            while ((entry = jarIn.getNextJarEntry()) != null) {
+                result.add(entry.getName());
+            }
+        }
+        finally {
+            Closeables.closeQuietly(in);
+        }
+        return result;
+    }
+
+    /**
+     * The META-INF information found in a single jar file.
+     */
+    private static class ScanResult {
+
+        /**
+         * True if the jar file contains a web fragment descriptor.
+         */
+        private boolean hasWebFragment = false;
+
+        /**
+         * True if the jar file contains a static resource directory.
+         */
+        private boolean hasResources = false;
+
+        /**
+         * The names of the TLD entries in the jar file.
+         */
+        private final List<String> tlds = new ArrayList<String>();
+
+        /**
+         * The size and modification time of the jar file when it was scanned, or null if it wasn't a local file.
+         */
+        private final String fingerprint;
+
+        /**
+         * @param fingerprint the size and modification time of the jar file, or null if it isn't a local file.
+         */
+        private ScanResult(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        /**
+         * Records a jar entry if it contains META-INF information.
+         *
+         * @param name the name of the jar entry.
+         */
+        private void add(String name) {
+            if (!name.startsWith("META-INF/")) {
+                return;
+            }
+            if (name.equals(WEB_FRAGMENT)) {
+                hasWebFragment = true;
+            }
+            else if (name.equals(RESOURCES)) {
+                hasResources = true;
+            }
+            else if (name.toLowerCase().endsWith(".tld")) {
+                tlds.add(name);
+            }
+        }
+    }
+}
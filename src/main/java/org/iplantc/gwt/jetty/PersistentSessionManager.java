@@ -0,0 +1,575 @@
+package org.iplantc.gwt.jetty;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.thirdparty.guava.common.io.Closeables;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSessionActivationListener;
+import javax.servlet.http.HttpSessionEvent;
+import org.eclipse.jetty.server.session.AbstractSession;
+import org.eclipse.jetty.server.session.HashSessionManager;
+import org.eclipse.jetty.server.session.HashedSession;
+
+/**
+ * A session manager that keeps sessions across restarts and reloads of the web application.  When the manager stops,
+ * every session is written to a single compressed file, and when it starts again the sessions in the file are
+ * restored.  Each attribute is serialized separately and restored sessions keep their attributes in serialized form
+ * until they're first accessed, so restoring sessions is cheap and attributes that are never used again are never
+ * deserialized.  Attributes are deserialized with the web application's class loader at the time of access, so they
+ * pick up classes from the new class loader after a reload.
+ *
+ * Sessions with an attribute that can't be serialized are skipped and counted, and are invalidated like any session
+ * that isn't saved.  The file is deleted once it has been read, so sessions are never restored twice.  If there's no
+ * session store file, sessions are invalidated when the manager stops, as they are by {@link HashSessionManager}.
+ *
+ * Restoring sessions deserializes whatever the file contains with the web application's class loader, so the file
+ * must not be writable by anyone else.  The default file is kept in a directory that only the current user can
+ * access, and the file is always written to a newly created temporary file so that a planted link can't redirect the
+ * write.
+ */
+public class PersistentSessionManager extends HashSessionManager {
+
+    /**
+     * Identifies a session store file.
+     */
+    private static final int MAGIC = 0x4a4c5353;
+
+    /**
+     * The version of the session store file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The logger to use for informational and error messages.
+     */
+    private final TreeLogger logger;
+
+    /**
+     * The session store file, or null if sessions aren't kept when the manager stops.
+     */
+    private final File storeFile;
+
+    /**
+     * The number of sessions that couldn't be saved because they had attributes that couldn't be serialized.
+     */
+    private int skippedSessions = 0;
+
+    /**
+     * @param logger the logger to use for informational and error messages.
+     * @param storeFile the session store file, or null if sessions shouldn't be kept when the manager stops.
+     */
+    public PersistentSessionManager(TreeLogger logger, File storeFile) {
+        this.logger = logger;
+        this.storeFile = storeFile;
+    }
+
+    /**
+     * Determines the default location of the session store file for a web application, which is in the launcher's
+     * private directory.
+     *
+     * @param appRootDir the root directory of the web application.
+     * @return the session store file.
+     * @throws IOException if the private directory can't be used.
+     * @see PrivateFiles
+     */
+    public static File defaultFile(File appRootDir) throws IOException {
+        return PrivateFiles.defaultLocation("sessions-", appRootDir, ".bin");
+    }
+
+    /**
+     * @return the total number of sessions that couldn't be saved because they had attributes that couldn't be
+     *         serialized.
+     */
+    public synchronized int getSkippedSessions() {
+        return skippedSessions;
+    }
+
+    /**
+     * Starts the session manager and restores the sessions in the session store file.
+     *
+     * @throws Exception if the session manager can't be started.
+     */
+    @Override
+    protected void doStart() throws Exception {
+        super.doStart();
+        if (storeFile != null) {
+            restoreSessions();
+        }
+    }
+
+    /**
+     * Creates a new session for a request.
+     *
+     * @param request the request.
+     * @return the session.
+     */
+    @Override
+    protected AbstractSession newSession(HttpServletRequest request) {
+        return new LazySession(this, request);
+    }
+
+    /**
+     * Creates an existing session.
+     *
+     * @param created the time at which the session was created.
+     * @param accessed the time at which the session was last accessed.
+     * @param clusterId the session identifier.
+     * @return the session.
+     */
+    @Override
+    protected AbstractSession newSession(long created, long accessed, String clusterId) {
+        return new LazySession(this, created, accessed, clusterId);
+    }
+
+    /**
+     * Saves the sessions to the session store file if the session manager is stopping, or invalidates them otherwise.
+     * Saved sessions are removed without being invalidated, so session listeners aren't told they were destroyed.
+     * Sessions that weren't saved, either because they couldn't be serialized or because the file couldn't be
+     * written, are invalidated so that listeners are told they're gone.
+     *
+     * @throws Exception if the sessions can't be shut down.
+     */
+    @Override
+    protected void shutdownSessions() throws Exception {
+        if (storeFile == null || !isStopping()) {
+            super.shutdownSessions();
+            return;
+        }
+        List<HashedSession> sessions = new ArrayList<HashedSession>(_sessions.values());
+        Set<HashedSession> saved = saveSessions(sessions);
+        for (HashedSession session : sessions) {
+            if (saved.contains(session)) {
+                removeSession(session, false);
+            }
+            else {
+                try {
+                    session.invalidate();
+                }
+                catch (IllegalStateException ignore) {}
+            }
+        }
+    }
+
+    /**
+     * Writes sessions to the session store file.  Each session is passivated before its attributes are serialized,
+     * and any session that ends up not being written is activated again so that it can be invalidated normally.
+     *
+     * @param sessions the sessions to write.
+     * @return the sessions that were written, which is empty if the file couldn't be written.
+     */
+    private Set<HashedSession> saveSessions(List<HashedSession> sessions) {
+        File tempFile = null;
+        DataOutputStream out = null;
+        Set<HashedSession> saved = new HashSet<HashedSession>();
+        int skipped = 0;
+        try {
+            tempFile = PrivateFiles.createTempFile(storeFile);
+            out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (HashedSession session : sessions) {
+                synchronized (session) {
+                    session.willPassivate();
+                    saved.add(session);
+                    Map<String, byte[]> attributes = serializeAttributes(session);
+                    if (attributes == null) {
+                        saved.remove(session);
+                        session.didActivate();
+                        skipped++;
+                        continue;
+                    }
+                    out.writeBoolean(true);
+                    writeSession(out, session, attributes);
+                }
+            }
+            out.writeBoolean(false);
+            out.close();
+            out = null;
+            if (storeFile.exists() && !storeFile.delete() || !tempFile.renameTo(storeFile)) {
+                throw new IOException("unable to replace " + storeFile);
+            }
+            logger.log(TreeLogger.INFO, "Saved " + saved.size() + " sessions; skipped " + skipped
+                    + " with attributes that can't be serialized");
+        }
+        catch (IOException e) {
+            logger.log(TreeLogger.WARN, "Unable to save sessions", e);
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+            for (HashedSession session : saved) {
+                session.didActivate();
+            }
+            saved.clear();
+        }
+        finally {
+            Closeables.closeQuietly(out);
+            synchronized (this) {
+                skippedSessions += skipped;
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * Writes a session record.
+     *
+     * @param out the stream to write to.
+     * @param session the session.
+     * @param attributes the serialized attributes of the session.
+     * @throws IOException if the record can't be written.
+     */
+    protected void writeSession(DataOutputStream out, HashedSession session, Map<String, byte[]> attributes)
+            throws IOException {
+        out.writeUTF(session.getClusterId());
+        out.writeLong(session.getCreationTime());
+        out.writeLong(session.getAccessed());
+        out.writeInt(session.getMaxInactiveInterval());
+        out.writeInt(attributes.size());
+        for (Map.Entry<String, byte[]> entry : attributes.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().length);
+            out.write(entry.getValue());
+        }
+    }
+
+    /**
+     * Reads a session record written by {@link #writeSession}.  Restored attributes are deserialized when they're
+     * first accessed.  The session isn't added to the manager.
+     *
+     * @param in the stream to read from.
+     * @return the session.
+     * @throws IOException if the record can't be read.
+     */
+    protected HashedSession readSession(DataInputStream in) throws IOException {
+        String clusterId = in.readUTF();
+        long created = in.readLong();
+        long accessed = in.readLong();
+        int maxInactiveInterval = in.readInt();
+        LazySession session = (LazySession) newSession(created, accessed, clusterId);
+        session.setMaxInactiveInterval(maxInactiveInterval);
+        int attributeCount = in.readInt();
+        for (int i = 0; i < attributeCount; i++) {
+            String name = in.readUTF();
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            session.restoreAttribute(name, new SerializedAttribute(bytes));
+        }
+        return session;
+    }
+
+    /**
+     * Serializes the attributes of a session separately.  Attributes that haven't been deserialized since the session
+     * was restored are written back as they are.  The caller must hold the lock on the session.
+     *
+     * @param session the session.
+     * @return the serialized attributes, or null if any of the attributes can't be serialized.
+     */
+    protected Map<String, byte[]> serializeAttributes(HashedSession session) {
+        Map<String, byte[]> serialized = new LinkedHashMap<String, byte[]>();
+        for (Map.Entry<String, Object> entry : session.getAttributeMap().entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof SerializedAttribute) {
+                serialized.put(entry.getKey(), ((SerializedAttribute) value).bytes);
+                continue;
+            }
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ObjectOutputStream out = new ObjectOutputStream(bytes);
+                out.writeObject(value);
+                out.close();
+                serialized.put(entry.getKey(), bytes.toByteArray());
+            }
+            catch (IOException e) {
+                logger.log(TreeLogger.DEBUG, "Skipping session " + session.getClusterId() + ": attribute "
+                        + entry.getKey() + " can't be serialized", e);
+                return null;
+            }
+        }
+        return serialized;
+    }
+
+    /**
+     * Restores the sessions in the session store file, if there is one, and deletes the file.  Sessions that expired
+     * while they were stored are discarded.
+     */
+    private void restoreSessions() {
+        if (!storeFile.isFile()) {
+            return;
+        }
+        DataInputStream in = null;
+        int restored = 0;
+        try {
+            in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(storeFile))));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(storeFile + " is not a session store file");
+            }
+            long now = System.currentTimeMillis();
+            while (in.readBoolean()) {
+                HashedSession session = readSession(in);
+                if (!isExpired(session.getAccessed(), session.getMaxInactiveInterval(), now)) {
+                    addSession(session, false);
+                    restored++;
+                }
+            }
+            logger.log(TreeLogger.INFO, "Restored " + restored + " sessions");
+        }
+        catch (IOException e) {
+            logger.log(TreeLogger.WARN, "Unable to restore sessions", e);
+        }
+        finally {
+            Closeables.closeQuietly(in);
+            if (!storeFile.delete()) {
+                logger.log(TreeLogger.WARN, "Unable to delete " + storeFile);
+            }
+        }
+    }
+
+    /**
+     * Determines whether or not a session has expired.
+     *
+     * @param accessed the time at which the session was last accessed.
+     * @param maxInactiveInterval the maximum number of seconds the session may be inactive, or zero or less if it never
+     *                            expires.
+     * @param now the current time.
+     * @return true if the session has expired.
+     */
+    protected static boolean isExpired(long accessed, int maxInactiveInterval, long now) {
+        return maxInactiveInterval > 0 && accessed + maxInactiveInterval * 1000L <= now;
+    }
+
+    /**
+     * Called before a request accesses a session.
+     *
+     * @param session the session.
+     */
+    protected void beforeAccess(HashedSession session) {
+    }
+
+    /**
+     * Called when an attribute of a session is set or removed.
+     *
+     * @param session the session.
+     */
+    protected void attributesChanged(HashedSession session) {
+    }
+
+    /**
+     * @return the class loader to deserialize attributes with.
+     */
+    private ClassLoader getAttributeClassLoader() {
+        ClassLoader classLoader = getContextHandler() == null ? null : getContextHandler().getClassLoader();
+        return classLoader == null ? Thread.currentThread().getContextClassLoader() : classLoader;
+    }
+
+    /**
+     * An attribute value that hasn't been deserialized yet.
+     */
+    private static class SerializedAttribute {
+
+        /**
+         * The serialized attribute value.
+         */
+        private final byte[] bytes;
+
+        /**
+         * @param bytes the serialized attribute value.
+         */
+        private SerializedAttribute(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * A session whose restored attributes are deserialized when they're first accessed.
+     */
+    private class LazySession extends HashedSession {
+
+        /**
+         * @param manager the session manager.
+         * @param request the request that the session is created for.
+         */
+        private LazySession(HashSessionManager manager, HttpServletRequest request) {
+            super(manager, request);
+        }
+
+        /**
+         * @param manager the session manager.
+         * @param created the time at which the session was created.
+         * @param accessed the time at which the session was last accessed.
+         * @param clusterId the session identifier.
+         */
+        private LazySession(HashSessionManager manager, long created, long accessed, String clusterId) {
+            super(manager, created, accessed, clusterId);
+        }
+
+        /**
+         * Stores a restored attribute without notifying any listeners.
+         *
+         * @param name the attribute name.
+         * @param value the serialized attribute value.
+         */
+        private void restoreAttribute(String name, SerializedAttribute value) {
+            doPutOrRemove(name, value);
+        }
+
+        /**
+         * Records an access to the session by a request.
+         *
+         * @param time the time of the access.
+         * @return true if the session is still valid.
+         */
+        @Override
+        protected boolean access(long time) {
+            beforeAccess(this);
+            return super.access(time);
+        }
+
+        /**
+         * Gets an attribute, deserializing it if necessary.
+         *
+         * @param name the attribute name.
+         * @return the attribute value, or null if there is no such attribute.
+         */
+        @Override
+        public Object getAttribute(String name) {
+            synchronized (this) {
+                Object value = super.getAttribute(name);
+                return value instanceof SerializedAttribute ? resolve(name) : value;
+            }
+        }
+
+        /**
+         * Sets an attribute, deserializing the value it replaces first so that listeners see the real value.
+         *
+         * @param name the attribute name.
+         * @param value the attribute value.
+         */
+        @Override
+        public void setAttribute(String name, Object value) {
+            synchronized (this) {
+                resolve(name);
+            }
+            super.setAttribute(name, value);
+            attributesChanged(this);
+        }
+
+        /**
+         * Removes an attribute, deserializing it first so that listeners see the real value.
+         *
+         * @param name the attribute name.
+         */
+        @Override
+        public void removeAttribute(String name) {
+            synchronized (this) {
+                resolve(name);
+            }
+            super.removeAttribute(name);
+            attributesChanged(this);
+        }
+
+        /**
+         * Invalidates the session, deserializing any remaining attributes first so that listeners see the real values.
+         *
+         * @throws IllegalStateException if the session has already been invalidated.
+         */
+        @Override
+        protected void doInvalidate() throws IllegalStateException {
+            synchronized (this) {
+                for (String name : new ArrayList<String>(getAttributeMap().keySet())) {
+                    resolve(name);
+                }
+            }
+            super.doInvalidate();
+        }
+
+        /**
+         * Deserializes an attribute if it hasn't been deserialized yet.  An attribute that can no longer be
+         * deserialized, for example because its class has been removed from the web application, is dropped.
+         *
+         * @param name the attribute name.
+         * @return the attribute value, or null if there is no such attribute.
+         */
+        private Object resolve(String name) {
+            Object value = doGet(name);
+            if (!(value instanceof SerializedAttribute)) {
+                return value;
+            }
+            try {
+                ObjectInputStream in = new ClassLoaderObjectInputStream(
+                        new ByteArrayInputStream(((SerializedAttribute) value).bytes), getAttributeClassLoader());
+                Object deserialized = in.readObject();
+                doPutOrRemove(name, deserialized);
+                if (deserialized instanceof HttpSessionActivationListener) {
+                    ((HttpSessionActivationListener) deserialized).sessionDidActivate(new HttpSessionEvent(this));
+                }
+                return deserialized;
+            }
+            catch (Exception e) {
+                logger.log(TreeLogger.WARN, "Dropping session attribute " + name + ": it can't be deserialized", e);
+                doPutOrRemove(name, null);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * An object input stream that resolves classes with a specific class loader.
+     */
+    private static class ClassLoaderObjectInputStream extends ObjectInputStream {
+
+        /**
+         * The class loader to resolve classes with.
+         */
+        private final ClassLoader classLoader;
+
+        /**
+         * @param in the stream to read from.
+         * @param classLoader the class loader to resolve classes with.
+         * @throws IOException if the stream header can't be read.
+         */
+        private ClassLoaderObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        /**
+         * Resolves a class with the class loader, falling back to the default resolution for primitive types and
+         * classes the class loader can't find.
+         *
+         * @param desc the class descriptor.
+         * @return the class.
+         * @throws IOException if an I/O error occurs.
+         * @throws ClassNotFoundException if the class can't be found.
+         */
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return Class.forName(desc.getName(), false, classLoader);
+            }
+            catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.iplantc.gwt.jetty;
+
+import java.io.File;
+import java.io.IOException;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.http.HttpHeaders;
+import org.eclipse.jetty.io.Buffer;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.eclipse.jetty.webapp.WebAppContext;
+
+/**
+ * A handler that serves the precompressed variants of static files produced by a {@link StaticCompressor} to clients
+ * that accept them.  Requests for files without an up-to-date compressed variant are passed through unchanged, as are
+ * all requests if the web application declares security constraints, since those are only enforced inside it.
+ */
+public class PrecompressedHandler extends HandlerWrapper {
+
+    /**
+     * The root directory for the web application.
+     */
+    private final File appRootDir;
+
+    /**
+     * The compressor that produces the compressed variants.
+     */
+    private final StaticCompressor compressor;
+
+    /**
+     * The web application context that requests are passed on to.
+     */
+    private final WebAppContext wac;
+
+    /**
+     * The cache of memory mapped files, or null if compressed files shouldn't be memory mapped.
+     */
+    private final MappedFileCache mappedFiles;
+
+    /**
+     * @param appRootDir the root directory for the web application.
+     * @param compressor the compressor that produces the compressed variants.
+     * @param wac the web application context that requests are passed on to.
+     * @param mappedFiles the cache of memory mapped files, or null if compressed files shouldn't be memory mapped.
+     */
+    public PrecompressedHandler(File appRootDir, StaticCompressor compressor, WebAppContext wac,
+            MappedFileCache mappedFiles) {
+        this.appRootDir = appRootDir;
+        this.compressor = compressor;
+        this.wac = wac;
+        this.mappedFiles = mappedFiles;
+    }
+
+    /**
+     * Serves the compressed variant of a static file if one is available and acceptable to the client.
+     *
+     * @param target the request target.
+     * @param baseRequest the Jetty request.
+     * @param request the servlet request.
+     * @param response the servlet response.
+     * @throws IOException if an I/O error occurs.
+     * @throws ServletException if a servlet error occurs.
+     */
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding != null && StaticResources.isGetOrHead(request)
+                && request.getHeader(HttpHeaders.RANGE) == null) {
+            File file = StaticResources.resolve(appRootDir, target);
+            if (file != null && !StaticResources.hasSecurityConstraints(wac)) {
+                if (serveCompressed(file, acceptEncoding, "br", StaticCompressor.BROTLI_SUFFIX, baseRequest, request,
+                        response)
+                        || serveCompressed(file, acceptEncoding, "gzip", StaticCompressor.GZIP_SUFFIX, baseRequest,
+                        request, response)) {
+                    return;
+                }
+            }
+        }
+        super.handle(target, baseRequest, request, response);
+    }
+
+    /**
+     * Serves the compressed variant of a file if the client accepts the encoding and the variant is up to date.  If
+     * the client already has the current variant, the request is answered with a 304 status instead.
+     *
+     * @param file the file that was requested.
+     * @param acceptEncoding the value of the Accept-Encoding header.
+     * @param encoding the content encoding.
+     * @param suffix the file name suffix for the content encoding.
+     * @param baseRequest the Jetty request.
+     * @param request the servlet request.
+     * @param response the servlet response.
+     * @return true if the compressed variant was served.
+     * @throws IOException if an I/O error occurs.
+     */
+    private boolean serveCompressed(File file, String acceptEncoding, String encoding, String suffix,
+            Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!accepts(acceptEncoding, encoding)) {
+            return false;
+        }
+        File compressed = compressor.findCompressed(file, suffix);
+        if (compressed == null) {
+            return false;
+        }
+        String etag = StaticResources.weakEtag(compressed);
+        long lastModified = file.lastModified() / 1000 * 1000;
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        if (StaticResources.isNotModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            baseRequest.setHandled(true);
+            return true;
+        }
+        Buffer contentType = wac.getMimeTypes().getMimeByExtension(file.getName());
+        if (contentType != null) {
+            response.setContentType(contentType.toString());
+        }
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+        StaticResources.sendFile(baseRequest, response, compressed, mappedFiles);
+        return true;
+    }
+
+    /**
+     * Determines whether or not an Accept-Encoding header value lists an encoding without disabling it.
+     *
+     * @param acceptEncoding the Accept-Encoding header value.
+     * @param encoding the encoding.
+     * @return true if the encoding is acceptable.
+     */
+    private boolean accepts(String acceptEncoding, String encoding) {
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            if (parts[0].trim().equalsIgnoreCase(encoding)) {
+                return parts.length < 2 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+}
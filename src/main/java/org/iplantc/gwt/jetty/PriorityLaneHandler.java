@@ -0,0 +1,316 @@
+package org.iplantc.gwt.jetty;
+
+import com.google.gwt.core.ext.TreeLogger;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationSupport;
+import org.eclipse.jetty.http.HttpHeaders;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+/**
+ * A handler that routes requests into lanes, each of which has its own limit on the number of threads it may occupy
+ * and its own queue limit, so that one kind of request can't starve the others.  For example, slow GWT-RPC calls can
+ * be confined to a lane so that static content is still served promptly while the RPC lane is saturated.  Requests that
+ * don't match any lane aren't restricted.
+ *
+ * When a lane has no free threads, the request is suspended using a Jetty continuation rather than blocking a thread,
+ * and is queued.  When a request in the lane completes, its thread permit is handed directly to the request at the head
+ * of the lane's queue, which is then resumed.  Queued requests that aren't resumed within the queue timeout, and
+ * requests that arrive when the queue is full, are rejected with a 503 status.
+ */
+public class PriorityLaneHandler extends HandlerWrapper implements StatisticsReporter {
+
+    /**
+     * The name of the request attribute used to store the queue entry for a suspended request.
+     */
+    private static final String WAITER_ATTRIBUTE = PriorityLaneHandler.class.getName() + ".waiter";
+
+    /**
+     * The lanes, in the order in which they're matched.
+     */
+    private final List<Lane> lanes;
+
+    /**
+     * The number of milliseconds a request may wait in a lane's queue.
+     */
+    private final long queueTimeout;
+
+    /**
+     * @param lanes the lanes, in the order in which they're matched.
+     * @param queueTimeout the number of milliseconds a request may wait in a lane's queue, which must be positive
+     *                     because a continuation with a timeout of zero never expires.
+     */
+    public PriorityLaneHandler(List<Lane> lanes, long queueTimeout) {
+        if (queueTimeout <= 0) {
+            throw new IllegalArgumentException("the queue timeout must be positive");
+        }
+        this.lanes = new ArrayList<Lane>(lanes);
+        this.queueTimeout = queueTimeout;
+    }
+
+    /**
+     * Processes a request in its lane, suspending it if the lane has no free threads.
+     *
+     * @param target the request target.
+     * @param baseRequest the Jetty request.
+     * @param request the servlet request.
+     * @param response the servlet response.
+     * @throws IOException if an I/O error occurs.
+     * @throws ServletException if a servlet error occurs.
+     */
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+        Lane lane = InternalConnector.isInternal(baseRequest) ? null : laneFor(target, request);
+        if (lane == null) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+        Waiter waiter = (Waiter) request.getAttribute(WAITER_ATTRIBUTE);
+        if (waiter != null) {
+            request.removeAttribute(WAITER_ATTRIBUTE);
+            if (waiter.state.compareAndSet(Waiter.WAITING, Waiter.EXPIRED)) {
+                lane.queue.remove(waiter);
+                lane.timedOut.incrementAndGet();
+                reject(baseRequest, response);
+                return;
+            }
+        }
+        else if (!lane.permits.tryAcquire()) {
+            enqueue(lane, request, baseRequest, response);
+            return;
+        }
+        try {
+            super.handle(target, baseRequest, request, response);
+        }
+        finally {
+            lane.release();
+        }
+    }
+
+    /**
+     * Suspends a request and adds it to its lane's queue, or rejects it if the queue is full.
+     *
+     * @param lane the lane.
+     * @param request the servlet request.
+     * @param baseRequest the Jetty request.
+     * @param response the servlet response.
+     * @throws IOException if the rejection can't be sent.
+     */
+    private void enqueue(Lane lane, HttpServletRequest request, Request baseRequest, HttpServletResponse response)
+            throws IOException {
+        if (lane.queue.remainingCapacity() == 0) {
+            lane.rejected.incrementAndGet();
+            reject(baseRequest, response);
+            return;
+        }
+        Continuation continuation = ContinuationSupport.getContinuation(request);
+        Waiter waiter = new Waiter(continuation);
+        request.setAttribute(WAITER_ATTRIBUTE, waiter);
+        continuation.setTimeout(queueTimeout);
+        continuation.suspend();
+        if (!lane.queue.offer(waiter)) {
+            request.removeAttribute(WAITER_ATTRIBUTE);
+            lane.rejected.incrementAndGet();
+            reject(baseRequest, response);
+            continuation.complete();
+            return;
+        }
+        lane.queued.incrementAndGet();
+
+        // A permit may have been released after our first attempt but before the request was queued.
+        if (lane.permits.tryAcquire()) {
+            lane.release();
+        }
+    }
+
+    /**
+     * Rejects a request with a 503 status.
+     *
+     * @param baseRequest the Jetty request.
+     * @param response the servlet response.
+     * @throws IOException if the rejection can't be sent.
+     */
+    private void reject(Request baseRequest, HttpServletResponse response) throws IOException {
+        baseRequest.setHandled(true);
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Finds the lane for a request.
+     *
+     * @param target the request target.
+     * @param request the servlet request.
+     * @return the first lane that matches the request or null if no lane matches.
+     */
+    private Lane laneFor(String target, HttpServletRequest request) {
+        for (Lane lane : lanes) {
+            if (lane.matches(target, request)) {
+                return lane;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Logs the request counts for each lane.
+     *
+     * @param logger the logger to use.
+     */
+    public void reportStatistics(TreeLogger logger) {
+        for (Lane lane : lanes) {
+            logger.log(TreeLogger.INFO, "Lane " + lane.name + ": " + lane.queued.get() + " requests queued, "
+                    + lane.rejected.get() + " rejected because the queue was full, " + lane.timedOut.get()
+                    + " timed out in the queue");
+        }
+    }
+
+    /**
+     * A lane with its own thread and queue limits.
+     */
+    public static class Lane {
+
+        /**
+         * The name of the lane.
+         */
+        private final String name;
+
+        /**
+         * The pattern that request paths must match, or null if the path doesn't matter.
+         */
+        private final Pattern pathPattern;
+
+        /**
+         * The prefix that the request content type must start with, or null if the content type doesn't matter.
+         */
+        private final String contentType;
+
+        /**
+         * The permits for the threads the lane may occupy.
+         */
+        private final Semaphore permits;
+
+        /**
+         * The suspended requests waiting for a thread permit.
+         */
+        private final BlockingQueue<Waiter> queue;
+
+        /**
+         * The number of requests that were queued.
+         */
+        private final AtomicLong queued = new AtomicLong();
+
+        /**
+         * The number of requests that were rejected because the queue was full.
+         */
+        private final AtomicLong rejected = new AtomicLong();
+
+        /**
+         * The number of requests that timed out in the queue.
+         */
+        private final AtomicLong timedOut = new AtomicLong();
+
+        /**
+         * @param name the name of the lane.
+         * @param threads the maximum number of threads the lane may occupy.
+         * @param maxQueued the maximum number of requests that may wait in the lane's queue.
+         * @param pathPattern the pattern that request paths must match, or null if the path doesn't matter.
+         * @param contentType the prefix that the request content type must start with, or null.
+         */
+        public Lane(String name, int threads, int maxQueued, Pattern pathPattern, String contentType) {
+            this.name = name;
+            this.pathPattern = pathPattern;
+            this.contentType = contentType;
+            this.permits = new Semaphore(threads);
+            this.queue = new LinkedBlockingQueue<Waiter>(Math.max(1, maxQueued));
+        }
+
+        /**
+         * Determines whether or not a request belongs in this lane.
+         *
+         * @param target the request target.
+         * @param request the servlet request.
+         * @return true if the request belongs in this lane.
+         */
+        private boolean matches(String target, HttpServletRequest request) {
+            if (pathPattern != null && !pathPattern.matcher(target).matches()) {
+                return false;
+            }
+            if (contentType != null) {
+                String requestContentType = request.getContentType();
+                return requestContentType != null && requestContentType.startsWith(contentType);
+            }
+            return true;
+        }
+
+        /**
+         * Releases a thread permit, handing it to the first queued request that is still waiting if there is one.
+         */
+        private void release() {
+            Waiter waiter;
+            while ((waiter = queue.poll()) != null) {
+                if (waiter.state.compareAndSet(Waiter.WAITING, Waiter.GRANTED)) {
+                    try {
+                        waiter.continuation.resume();
+                    }
+                    catch (IllegalStateException ignore) {
+                        // The continuation expired concurrently; it will find the permit when it's dispatched.
+                    }
+                    return;
+                }
+            }
+            permits.release();
+        }
+    }
+
+    /**
+     * A suspended request waiting in a lane's queue.
+     */
+    private static class Waiter {
+
+        /**
+         * The state of a request that is still waiting.
+         */
+        private static final int WAITING = 0;
+
+        /**
+         * The state of a request that has been handed a thread permit.
+         */
+        private static final int GRANTED = 1;
+
+        /**
+         * The state of a request whose queue timeout has elapsed.
+         */
+        private static final int EXPIRED = 2;
+
+        /**
+         * The continuation used to resume the request.
+         */
+        private final Continuation continuation;
+
+        /**
+         * The state of the request.
+         */
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        /**
+         * @param continuation the continuation used to resume the request.
+         */
+        private Waiter(Continuation continuation) {
+            this.continuation = continuation;
+        }
+    }
+}
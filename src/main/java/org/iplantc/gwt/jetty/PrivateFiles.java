@@ -0,0 +1,117 @@
+package org.iplantc.gwt.jetty;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.security.Principal;
+
+/**
+ * Locates the files the launcher keeps between runs, such as session stores and caches, and creates the temporary
+ * files used to replace them.  The default locations are in a directory in the user's home directory that only the
+ * user can access, because the launcher loads classes and serves content from some of these files and must not pick
+ * up anything another local user planted there.  A shared directory such as {@code java.io.tmpdir} would let anyone
+ * who creates a predictably named entry first take control of it.
+ */
+public class PrivateFiles {
+
+    /**
+     * The name of the private directory in the user's home directory.
+     */
+    private static final String PRIVATE_DIRECTORY = ".jetty-launcher";
+
+    // Prevent instantiation.
+    private PrivateFiles() {
+    }
+
+    /**
+     * Gets the private directory, creating it if necessary and restricting it to the current user.
+     *
+     * @return the private directory.
+     * @throws IOException if the directory can't be created or restricted, is a symbolic link or is owned by another
+     *                     user.
+     */
+    public static File privateDirectory() throws IOException {
+        File home = new File(System.getProperty("user.home")).getCanonicalFile();
+        File dir = new File(home, PRIVATE_DIRECTORY);
+        if (!dir.isDirectory() && !dir.mkdir() && !dir.isDirectory()) {
+            throw new IOException("unable to create " + dir);
+        }
+        if (!dir.getCanonicalFile().equals(dir)) {
+            throw new IOException(dir + " is a symbolic link");
+        }
+        String owner = ownerOf(dir);
+        if (owner != null && !isCurrentUser(owner)) {
+            throw new IOException(dir + " is owned by " + owner);
+        }
+        boolean restricted = dir.setReadable(false, false) && dir.setReadable(true, true)
+                && dir.setWritable(false, false) && dir.setWritable(true, true)
+                && dir.setExecutable(false, false) && dir.setExecutable(true, true);
+        if (!restricted) {
+            throw new IOException("unable to restrict access to " + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * Determines the default location of a file or directory that belongs to a web application.  The name is made
+     * unique to the web application by including a hash of its root directory.
+     *
+     * @param prefix the prefix of the name.
+     * @param appRootDir the root directory of the web application.
+     * @param suffix the suffix of the name.
+     * @return the location in the private directory.
+     * @throws IOException if the private directory can't be used.
+     */
+    public static File defaultLocation(String prefix, File appRootDir, String suffix) throws IOException {
+        String hash = Integer.toHexString(appRootDir.getAbsolutePath().hashCode());
+        return new File(privateDirectory(), prefix + hash + suffix);
+    }
+
+    /**
+     * Creates a new, empty temporary file in the same directory as a file it will replace.  The temporary file has a
+     * random name and is created exclusively, so a link planted in the directory can't redirect the write.
+     *
+     * @param target the file that the temporary file will replace.
+     * @return the temporary file.
+     * @throws IOException if the temporary file can't be created.
+     */
+    public static File createTempFile(File target) throws IOException {
+        File parent = target.getAbsoluteFile().getParentFile();
+        String prefix = target.getName().length() < 3 ? target.getName() + "___" : target.getName();
+        return File.createTempFile(prefix + ".", ".tmp", parent);
+    }
+
+    /**
+     * Determines the owner of a file without following symbolic links.  The owner is only available from Java 7, so
+     * it's looked up reflectively.
+     *
+     * @param file the file.
+     * @return the name of the owner, or null if it can't be determined.
+     */
+    private static String ownerOf(File file) {
+        try {
+            Object path = File.class.getMethod("toPath").invoke(file);
+            Class<?> pathClass = Class.forName("java.nio.file.Path");
+            Class<?> linkOptionClass = Class.forName("java.nio.file.LinkOption");
+            Object options = Array.newInstance(linkOptionClass, 1);
+            Array.set(options, 0, linkOptionClass.getField("NOFOLLOW_LINKS").get(null));
+            Object owner = Class.forName("java.nio.file.Files").getMethod("getOwner", pathClass, options.getClass())
+                    .invoke(null, path, options);
+            return ((Principal) owner).getName();
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Determines whether or not an owner name refers to the current user.  Owner names on Windows include the domain.
+     *
+     * @param owner the name of the owner.
+     * @return true if the owner is the current user.
+     */
+    private static boolean isCurrentUser(String owner) {
+        String user = System.getProperty("user.name");
+        return owner.equals(user) || owner.endsWith("\\" + user);
+    }
+}
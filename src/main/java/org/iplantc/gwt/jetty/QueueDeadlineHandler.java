@@ -0,0 +1,111 @@
+package org.iplantc.gwt.jetty;
+
+import com.google.gwt.core.ext.TreeLogger;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.http.HttpHeaderValues;
+import org.eclipse.jetty.http.HttpHeaders;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+/**
+ * A handler that measures how long each request waited before a thread picked it up, and rejects requests that waited
+ * longer than a deadline with a 503 status before they reach the web application.  When the server is overloaded, the
+ * clients of requests that have been queued for too long have usually given up, so serving them would only delay the
+ * requests whose clients are still waiting.
+ *
+ * The wait is measured from the time the connection was dispatched to the thread pool if the server uses a
+ * {@link TimestampingThreadPool}, and from the time Jetty parsed the request otherwise.  It's stored in the
+ * {@link #QUEUE_WAIT_ATTRIBUTE} request attribute for the handlers further down the chain.
+ */
+public class QueueDeadlineHandler extends HandlerWrapper implements StatisticsReporter {
+
+    /**
+     * The name of the request attribute that holds the number of nanoseconds the request waited for a thread.
+     */
+    public static final String QUEUE_WAIT_ATTRIBUTE = QueueDeadlineHandler.class.getName() + ".queueWait";
+
+    /**
+     * The maximum number of nanoseconds a request may wait for a thread, or zero if requests shouldn't be rejected.
+     */
+    private final long deadlineNanos;
+
+    /**
+     * The queue wait of accepted requests, in microseconds.
+     */
+    private final Histogram acceptedWait = new Histogram();
+
+    /**
+     * The queue wait of rejected requests, in microseconds.
+     */
+    private final Histogram rejectedWait = new Histogram();
+
+    /**
+     * @param deadline the maximum number of milliseconds a request may wait for a thread, or zero if requests should
+     *                 only be measured.
+     */
+    public QueueDeadlineHandler(long deadline) {
+        this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadline);
+    }
+
+    /**
+     * Determines the number of nanoseconds a request waited for a thread.
+     *
+     * @param baseRequest the Jetty request.
+     * @return the wait in nanoseconds.
+     */
+    public static long queueWaitNanos(Request baseRequest) {
+        Object queueWait = baseRequest.getAttribute(QUEUE_WAIT_ATTRIBUTE);
+        if (queueWait instanceof Long) {
+            return (Long) queueWait;
+        }
+        long arrival = baseRequest.getTimeStamp();
+        return arrival == 0 ? 0 : TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - arrival));
+    }
+
+    /**
+     * Handles a request, rejecting it if it waited too long for a thread.
+     *
+     * @param target the request target.
+     * @param baseRequest the Jetty request.
+     * @param request the servlet request.
+     * @param response the servlet response.
+     * @throws IOException if an I/O error occurs.
+     * @throws ServletException if a servlet error occurs.
+     */
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+        if (baseRequest.getAsyncContinuation().isInitial() && !InternalConnector.isInternal(baseRequest)) {
+            long queueWait = TimestampingThreadPool.takeQueueWait();
+            if (queueWait < 0) {
+                queueWait = queueWaitNanos(baseRequest);
+            }
+            request.setAttribute(QUEUE_WAIT_ATTRIBUTE, queueWait);
+            if (deadlineNanos > 0 && queueWait > deadlineNanos) {
+                rejectedWait.record(TimeUnit.NANOSECONDS.toMicros(queueWait));
+                baseRequest.setHandled(true);
+                response.setHeader(HttpHeaders.CONNECTION, HttpHeaderValues.CLOSE);
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                return;
+            }
+            acceptedWait.record(TimeUnit.NANOSECONDS.toMicros(queueWait));
+        }
+        super.handle(target, baseRequest, request, response);
+    }
+
+    /**
+     * Logs the queue wait histograms.
+     *
+     * @param logger the logger to use.
+     */
+    public void reportStatistics(TreeLogger logger) {
+        TreeLogger branch = logger.branch(TreeLogger.INFO, "Queue wait (deadline "
+                + (deadlineNanos > 0 ? TimeUnit.NANOSECONDS.toMillis(deadlineNanos) + " ms" : "disabled") + ")");
+        branch.log(TreeLogger.INFO, "Accepted (us): " + acceptedWait);
+        branch.log(TreeLogger.INFO, "Rejected (us): " + rejectedWait);
+    }
+}
@@ -0,0 +1,264 @@
+package org.iplantc.gwt.jetty;
+
+import com.google.gwt.core.ext.TreeLogger;
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.http.HttpHeaders;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+/**
+ * A handler that limits the rate of requests from each client using token buckets.  Clients are identified by the
+ * subject of their certificate when client authentication supplied one, or by their IP address otherwise.  Requests
+ * that exceed a client's rate are rejected with a 429 status and a {@code Retry-After} header.
+ *
+ * The buckets are kept in a fixed-size table so that memory use doesn't depend on the number of clients.  Each client
+ * may occupy one of a small number of slots determined by the hash of its key.  A bucket that has been idle long enough
+ * to refill completely is indistinguishable from a new bucket, so it may be evicted without affecting its client.  If
+ * none of the candidate slots is free or idle, the least recently used candidate is evicted.  Buckets are immutable and
+ * the table is updated with compare-and-set operations, so no locks are held while requests are processed.
+ */
+public class RateLimitHandler extends HandlerWrapper implements StatisticsReporter {
+
+    /**
+     * The name of the request attribute containing the client certificate chain.
+     */
+    private static final String CERTIFICATE_ATTRIBUTE = "javax.servlet.request.X509Certificate";
+
+    /**
+     * The number of slots that a client may occupy.
+     */
+    private static final int PROBES = 4;
+
+    /**
+     * The number of tokens added to each bucket per nanosecond.
+     */
+    private final double tokensPerNano;
+
+    /**
+     * The maximum number of tokens in each bucket.
+     */
+    private final double capacity;
+
+    /**
+     * The number of nanoseconds it takes for an empty bucket to refill completely.
+     */
+    private final long refillNanos;
+
+    /**
+     * The request paths that are never rate limited.
+     */
+    private final Set<String> exemptPaths;
+
+    /**
+     * The bucket table.
+     */
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    /**
+     * Used to map hash codes to slots in the bucket table.
+     */
+    private final int mask;
+
+    /**
+     * The number of requests that were rejected.
+     */
+    private final AtomicLong limited = new AtomicLong();
+
+    /**
+     * The number of active buckets that were evicted to make room for other clients.
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param requestsPerSecond the sustained number of requests per second permitted for each client.
+     * @param burst the number of requests that each client may send at once.
+     * @param slots the minimum number of slots in the bucket table.  This is rounded up to a power of two.
+     * @param exemptPaths the request paths that are never rate limited.
+     */
+    public RateLimitHandler(int requestsPerSecond, int burst, int slots, Set<String> exemptPaths) {
+        this.tokensPerNano = requestsPerSecond / 1e9;
+        this.capacity = burst;
+        this.refillNanos = (long) Math.ceil(capacity / tokensPerNano);
+        this.exemptPaths = exemptPaths;
+        int size = Integer.highestOneBit(Math.max(slots, PROBES) - 1) << 1;
+        this.buckets = new AtomicReferenceArray<Bucket>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Processes a request if its client hasn't exceeded its rate, or rejects it otherwise.
+     *
+     * @param target the request target.
+     * @param baseRequest the Jetty request.
+     * @param request the servlet request.
+     * @param response the servlet response.
+     * @throws IOException if an I/O error occurs.
+     * @throws ServletException if a servlet error occurs.
+     */
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+        if (!exemptPaths.contains(target) && !InternalConnector.isInternal(baseRequest)) {
+            double deficit = take(clientKey(request), System.nanoTime());
+            if (deficit > 0) {
+                limited.incrementAndGet();
+                baseRequest.setHandled(true);
+                long retryAfter = (long) Math.ceil(deficit / tokensPerNano / 1e9);
+                response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, retryAfter)));
+                response.sendError(429);
+                return;
+            }
+        }
+        super.handle(target, baseRequest, request, response);
+    }
+
+    /**
+     * Determines the key used to identify the client that sent a request.
+     *
+     * @param request the servlet request.
+     * @return the certificate subject of the client, or its IP address if it didn't supply a certificate.
+     */
+    private String clientKey(HttpServletRequest request) {
+        Object certificates = request.getAttribute(CERTIFICATE_ATTRIBUTE);
+        if (certificates instanceof X509Certificate[] && ((X509Certificate[]) certificates).length > 0) {
+            return "cert:" + ((X509Certificate[]) certificates)[0].getSubjectX500Principal().getName();
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    /**
+     * Takes a token from a client's bucket.
+     *
+     * @param key the client key.
+     * @param now the current time in nanoseconds.
+     * @return zero if a token was taken, or the number of tokens the client is short of otherwise.
+     */
+    private double take(String key, long now) {
+        int hash = spread(key.hashCode());
+        while (true) {
+            int victim = -1;
+            Bucket victimBucket = null;
+            boolean contended = false;
+            for (int probe = 0; probe < PROBES; probe++) {
+                int slot = (hash + probe) & mask;
+                Bucket bucket = buckets.get(slot);
+                if (bucket == null) {
+                    if (victim < 0 || victimBucket != null) {
+                        victim = slot;
+                        victimBucket = null;
+                    }
+                }
+                else if (bucket.key.equals(key)) {
+                    Bucket updated = bucket.take(now);
+                    if (buckets.compareAndSet(slot, bucket, updated)) {
+                        return updated.granted ? 0 : 1 - updated.tokens;
+                    }
+                    contended = true;
+                    break;
+                }
+                else if (victim < 0 || victimBucket != null && bucket.lastUpdate - victimBucket.lastUpdate < 0) {
+                    victim = slot;
+                    victimBucket = bucket;
+                }
+            }
+            if (contended) {
+                continue;
+            }
+            if (buckets.compareAndSet(victim, victimBucket, new Bucket(key, capacity - 1, now, true))) {
+                if (victimBucket != null && now - victimBucket.lastUpdate < refillNanos) {
+                    evictions.incrementAndGet();
+                }
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Spreads the bits of a hash code so that keys with similar hash codes don't cluster in the bucket table.
+     *
+     * @param hash the hash code.
+     * @return the spread hash code.
+     */
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+
+    /**
+     * @return the number of requests that were rejected.
+     */
+    public long getLimitedRequests() {
+        return limited.get();
+    }
+
+    /**
+     * Logs the number of rejected requests and evicted buckets.
+     *
+     * @param logger the logger to use.
+     */
+    public void reportStatistics(TreeLogger logger) {
+        logger.log(TreeLogger.INFO, "Rate limit: " + limited.get() + " requests rejected, " + evictions.get()
+                + " active clients evicted from " + buckets.length() + " slots");
+    }
+
+    /**
+     * An immutable snapshot of a client's token bucket.
+     */
+    private class Bucket {
+
+        /**
+         * The client key.
+         */
+        private final String key;
+
+        /**
+         * The number of tokens in the bucket.
+         */
+        private final double tokens;
+
+        /**
+         * The time at which the bucket was last updated, in nanoseconds.
+         */
+        private final long lastUpdate;
+
+        /**
+         * True if a token was granted by the update that produced this snapshot.
+         */
+        private final boolean granted;
+
+        /**
+         * @param key the client key.
+         * @param tokens the number of tokens in the bucket.
+         * @param lastUpdate the time at which the bucket was last updated.
+         * @param granted true if a token was granted by the update that produced this snapshot.
+         */
+        private Bucket(String key, double tokens, long lastUpdate, boolean granted) {
+            this.key = key;
+            this.tokens = tokens;
+            this.lastUpdate = lastUpdate;
+            this.granted = granted;
+        }
+
+        /**
+         * Refills the bucket and takes a token from it if there's a whole token available.
+         *
+         * @param now the current time in nanoseconds.
+         * @return the updated bucket.
+         */
+        private Bucket take(long now) {
+            double refilled = Math.min(capacity, tokens + Math.max(0, now - lastUpdate) * tokensPerNano);
+            return refilled >= 1
+                    ? new Bucket(key, refilled - 1, now, true)
+                    : new Bucket(key, refilled, now, false);
+        }
+    }
+}
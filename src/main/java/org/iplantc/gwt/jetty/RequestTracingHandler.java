@@ -0,0 +1,295 @@
+package org.iplantc.gwt.jetty;
+
+import com.google.gwt.core.ext.TreeLogger;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequestEvent;
+import javax.servlet.ServletRequestListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+/**
+ * A handler that assigns each request an identifier and records how long it spends in each phase of processing: the
+ * wait between the arrival of the request and its dispatch to the handler chain, the handlers in front of the web
+ * application, the servlet itself, and the completion of the response after the servlet returns.  Requests that take
+ * longer than a threshold are logged with their phase breakdown and with a stack trace of the handling thread that is
+ * sampled when the request crosses the threshold, which usually shows where the time is going.  The timings of every
+ * other request are simply discarded.
+ *
+ * The servlet phase is measured by a request listener that has to be registered with the web application context using
+ * {@link #getServletListener()}.
+ */
+public class RequestTracingHandler extends HandlerWrapper {
+
+    /**
+     * The name of the request attribute and response header containing the request identifier.
+     */
+    public static final String REQUEST_ID = "X-Request-Id";
+
+    /**
+     * The name of the request attribute containing the trace for a request.
+     */
+    private static final String TRACE_ATTRIBUTE = RequestTracingHandler.class.getName() + ".trace";
+
+    /**
+     * The shortest interval between scans for requests that have crossed the threshold, in milliseconds.
+     */
+    private static final long MIN_SAMPLE_INTERVAL = 10;
+
+    /**
+     * The logger to use for slow requests.
+     */
+    private final TreeLogger logger;
+
+    /**
+     * The number of nanoseconds after which a request is considered slow.
+     */
+    private final long thresholdNanos;
+
+    /**
+     * Used to generate request identifiers.
+     */
+    private final AtomicLong nextRequestId = new AtomicLong();
+
+    /**
+     * The traces of the requests that are currently being processed.
+     */
+    private final ConcurrentMap<Trace, Boolean> activeTraces = new ConcurrentHashMap<Trace, Boolean>();
+
+    /**
+     * Records the beginning and end of the servlet phase.
+     */
+    private final ServletRequestListener servletListener = new ServletRequestListener() {
+        public void requestInitialized(ServletRequestEvent event) {
+            Trace trace = (Trace) event.getServletRequest().getAttribute(TRACE_ATTRIBUTE);
+            if (trace != null && trace.servletStart == 0) {
+                trace.servletStart = System.nanoTime();
+            }
+        }
+
+        public void requestDestroyed(ServletRequestEvent event) {
+            Trace trace = (Trace) event.getServletRequest().getAttribute(TRACE_ATTRIBUTE);
+            if (trace != null) {
+                trace.servletEnd = System.nanoTime();
+            }
+        }
+    };
+
+    /**
+     * Scans the active traces for requests that have crossed the threshold.
+     */
+    private ScheduledExecutorService sampler;
+
+    /**
+     * @param logger the logger to use for slow requests.
+     * @param thresholdMillis the number of milliseconds after which a request is considered slow.
+     */
+    public RequestTracingHandler(TreeLogger logger, long thresholdMillis) {
+        this.logger = logger;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    /**
+     * @return the listener that has to be registered with the web application context to measure servlet time.
+     */
+    public ServletRequestListener getServletListener() {
+        return servletListener;
+    }
+
+    /**
+     * Traces a request.
+     *
+     * @param target the request target.
+     * @param baseRequest the Jetty request.
+     * @param request the servlet request.
+     * @param response the servlet response.
+     * @throws IOException if an I/O error occurs.
+     * @throws ServletException if a servlet error occurs.
+     */
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+        if (request.getAttribute(TRACE_ATTRIBUTE) != null) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+        Trace trace = new Trace(requestIdFor(request), request.getMethod() + " " + request.getRequestURI(),
+                QueueDeadlineHandler.queueWaitNanos(baseRequest));
+        request.setAttribute(REQUEST_ID, trace.requestId);
+        request.setAttribute(TRACE_ATTRIBUTE, trace);
+        response.setHeader(REQUEST_ID, trace.requestId);
+        activeTraces.put(trace, Boolean.TRUE);
+        try {
+            super.handle(target, baseRequest, request, response);
+        }
+        finally {
+            trace.end = System.nanoTime();
+            activeTraces.remove(trace);
+            if (trace.queueWait + trace.end - trace.start >= thresholdNanos) {
+                report(trace, response.getStatus());
+            }
+        }
+    }
+
+    /**
+     * Determines the identifier for a request, reusing the identifier supplied by the client if there is one.
+     *
+     * @param request the servlet request.
+     * @return the request identifier.
+     */
+    private String requestIdFor(HttpServletRequest request) {
+        String requestId = request.getHeader(REQUEST_ID);
+        return requestId != null && requestId.length() > 0 && requestId.length() <= 128
+                ? requestId
+                : Long.toString(nextRequestId.incrementAndGet(), 36);
+    }
+
+    /**
+     * Logs a slow request.
+     *
+     * @param trace the trace of the request.
+     * @param status the response status.
+     */
+    private void report(Trace trace, int status) {
+        long total = trace.end - trace.start;
+        TreeLogger branch = logger.branch(TreeLogger.WARN, "Slow request " + trace.requestId + ": " + trace.description
+                + " (" + status + ") took " + millis(trace.queueWait + total) + " ms");
+        branch.log(TreeLogger.INFO, "Queue wait: " + millis(trace.queueWait) + " ms");
+        if (trace.servletStart != 0 && trace.servletEnd != 0) {
+            branch.log(TreeLogger.INFO, "Handler dispatch: " + millis(trace.servletStart - trace.start) + " ms");
+            branch.log(TreeLogger.INFO, "Servlet: " + millis(trace.servletEnd - trace.servletStart) + " ms");
+            branch.log(TreeLogger.INFO, "Response commit: " + millis(trace.end - trace.servletEnd) + " ms");
+        }
+        else {
+            branch.log(TreeLogger.INFO, "Handlers: " + millis(total) + " ms");
+        }
+        StackTraceElement[] stack = trace.sampledStack;
+        if (stack != null) {
+            TreeLogger stackBranch = branch.branch(TreeLogger.INFO, "Stack of " + trace.thread.getName() + " at "
+                    + millis(thresholdNanos) + " ms");
+            for (StackTraceElement element : stack) {
+                stackBranch.log(TreeLogger.INFO, "at " + element);
+            }
+        }
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds.
+     *
+     * @param nanos the number of nanoseconds.
+     * @return the number of milliseconds.
+     */
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * Samples the stacks of the handling threads of the requests that have just crossed the threshold.
+     */
+    private void sample() {
+        long now = System.nanoTime();
+        for (Trace trace : activeTraces.keySet()) {
+            if (trace.sampledStack == null && now - trace.start >= thresholdNanos) {
+                trace.sampledStack = trace.thread.getStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Starts the sampler.
+     *
+     * @throws Exception if the handler can't be started.
+     */
+    @Override
+    protected void doStart() throws Exception {
+        long interval = Math.max(MIN_SAMPLE_INTERVAL, millis(thresholdNanos) / 4);
+        sampler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("request-trace-sampler"));
+        sampler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                sample();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        super.doStart();
+    }
+
+    /**
+     * Stops the sampler.
+     *
+     * @throws Exception if the handler can't be stopped.
+     */
+    @Override
+    protected void doStop() throws Exception {
+        super.doStop();
+        sampler.shutdownNow();
+    }
+
+    /**
+     * The timings of a single request.
+     */
+    private static class Trace {
+
+        /**
+         * The request identifier.
+         */
+        private final String requestId;
+
+        /**
+         * The request method and URI.
+         */
+        private final String description;
+
+        /**
+         * The thread handling the request.
+         */
+        private final Thread thread = Thread.currentThread();
+
+        /**
+         * The time at which the request entered this handler, in nanoseconds.
+         */
+        private final long start = System.nanoTime();
+
+        /**
+         * The number of nanoseconds the request waited before it was dispatched to the handler chain.
+         */
+        private final long queueWait;
+
+        /**
+         * The time at which the servlet phase began, or zero if it hasn't begun.
+         */
+        private volatile long servletStart = 0;
+
+        /**
+         * The time at which the servlet phase ended, or zero if it hasn't ended.
+         */
+        private volatile long servletEnd = 0;
+
+        /**
+         * The time at which the request left this handler.
+         */
+        private long end;
+
+        /**
+         * The stack of the handling thread when the request crossed the threshold, or null if it hasn't been sampled.
+         */
+        private volatile StackTraceElement[] sampledStack = null;
+
+        /**
+         * @param requestId the request identifier.
+         * @param description the request method and URI.
+         * @param queueWait the number of nanoseconds the request waited before it was dispatched.
+         */
+        private Trace(String requestId, String description, long queueWait) {
+            this.requestId = requestId;
+            this.description = description;
+            this.queueWait = queueWait;
+        }
+    }
+}
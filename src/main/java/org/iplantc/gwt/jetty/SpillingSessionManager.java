@@ -0,0 +1,386 @@
+package org.iplantc.gwt.jetty;
+
+import com.google.gwt.core.ext.TreeLogger;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.jetty.server.session.AbstractSession;
+import org.eclipse.jetty.server.session.HashedSession;
+
+/**
+ * A session manager that limits the amount of heap used by sessions.  Whenever the sessions are scavenged, the
+ * approximate heap size of each resident session is estimated from the size of its serialized attributes, and if the
+ * total exceeds the limit the least recently used idle sessions are serialized into direct buffers outside the heap
+ * and removed from the session table until the total is back under the limit.  A spilled session is read back into
+ * the heap when a request refers to it again, with its attributes deserialized as they're accessed.
+ *
+ * Sessions that are in use by a request, and sessions with attributes that can't be serialized, are never spilled.
+ * Spilled sessions expire like resident sessions, and are read back before they're invalidated or saved so that
+ * listeners see their attributes.
+ */
+public class SpillingSessionManager extends PersistentSessionManager implements StatisticsReporter {
+
+    /**
+     * The number of seconds between scavenges, which is also how often the heap limit is enforced.
+     */
+    private static final int SCAVENGE_PERIOD = 5;
+
+    /**
+     * The offset of the last access time in a spilled session buffer.
+     */
+    private static final int ACCESSED_OFFSET = 0;
+
+    /**
+     * The offset of the maximum inactive interval in a spilled session buffer.
+     */
+    private static final int MAX_INACTIVE_OFFSET = 8;
+
+    /**
+     * The size of the header that precedes the session record in a spilled session buffer.
+     */
+    private static final int HEADER_SIZE = 12;
+
+    /**
+     * The logger to use for informational and error messages.
+     */
+    private final TreeLogger logger;
+
+    /**
+     * The maximum number of bytes of heap that resident sessions should occupy.
+     */
+    private final long heapLimit;
+
+    /**
+     * The spilled sessions, keyed by session identifier.
+     */
+    private final ConcurrentMap<String, ByteBuffer> spilled = new ConcurrentHashMap<String, ByteBuffer>();
+
+    /**
+     * The estimated heap size of resident sessions whose attributes haven't changed since they were last measured.
+     */
+    private final ConcurrentMap<String, Long> sizeEstimates = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * Held while sessions are moved into or out of the spill area.
+     */
+    private final Object spillLock = new Object();
+
+    /**
+     * The number of bytes held in the spill area.
+     */
+    private final AtomicLong spilledBytes = new AtomicLong();
+
+    /**
+     * The number of sessions that have been spilled.
+     */
+    private final AtomicLong spillCount = new AtomicLong();
+
+    /**
+     * The number of sessions that have been read back from the spill area.
+     */
+    private final AtomicLong pageInCount = new AtomicLong();
+
+    /**
+     * @param logger the logger to use for informational and error messages.
+     * @param storeFile the session store file, or null if sessions shouldn't be kept when the manager stops.
+     * @param heapLimit the maximum number of bytes of heap that resident sessions should occupy.
+     */
+    public SpillingSessionManager(TreeLogger logger, File storeFile, long heapLimit) {
+        super(logger, storeFile);
+        this.logger = logger;
+        this.heapLimit = heapLimit;
+        setScavengePeriod(SCAVENGE_PERIOD);
+    }
+
+    /**
+     * @return the number of sessions on the heap.
+     */
+    public int getResidentSessions() {
+        return _sessions.size();
+    }
+
+    /**
+     * @return the number of sessions in the spill area.
+     */
+    public int getSpilledSessions() {
+        return spilled.size();
+    }
+
+    /**
+     * @return the number of bytes held in the spill area.
+     */
+    public long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+
+    /**
+     * Gets a session, reading it back from the spill area if it has been spilled.
+     *
+     * @param clusterId the session identifier.
+     * @return the session, or null if there's no such session.
+     */
+    @Override
+    public AbstractSession getSession(String clusterId) {
+        AbstractSession session = super.getSession(clusterId);
+        return session != null || spilled.isEmpty() ? session : pageIn(clusterId);
+    }
+
+    /**
+     * Expires sessions and then spills the least recently used sessions if the resident sessions exceed the heap limit.
+     */
+    @Override
+    protected void scavenge() {
+        super.scavenge();
+        if (isStopping() || !isRunning()) {
+            return;
+        }
+        expireSpilledSessions();
+        enforceHeapLimit();
+    }
+
+    /**
+     * Reads every spilled session back before the sessions are saved or invalidated.
+     *
+     * @throws Exception if the sessions can't be shut down.
+     */
+    @Override
+    protected void shutdownSessions() throws Exception {
+        for (String clusterId : new ArrayList<String>(spilled.keySet())) {
+            pageIn(clusterId);
+        }
+        super.shutdownSessions();
+    }
+
+    /**
+     * Puts a session that was spilled while a request was about to use it back in the session table.
+     *
+     * @param session the session.
+     */
+    @Override
+    protected void beforeAccess(HashedSession session) {
+        if (spilled.containsKey(session.getClusterId())) {
+            synchronized (spillLock) {
+                ByteBuffer buffer = spilled.remove(session.getClusterId());
+                if (buffer != null) {
+                    spilledBytes.addAndGet(-buffer.capacity());
+                    _sessions.put(session.getClusterId(), session);
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards the size estimate of a session whose attributes have changed.
+     *
+     * @param session the session.
+     */
+    @Override
+    protected void attributesChanged(HashedSession session) {
+        sizeEstimates.remove(session.getClusterId());
+    }
+
+    /**
+     * Removes a session, discarding its size estimate.
+     *
+     * @param clusterId the session identifier.
+     * @return true if the session was removed.
+     */
+    @Override
+    protected boolean removeSession(String clusterId) {
+        sizeEstimates.remove(clusterId);
+        return super.removeSession(clusterId);
+    }
+
+    /**
+     * Spills the least recently used idle sessions until the resident sessions fit within the heap limit.
+     */
+    private void enforceHeapLimit() {
+        List<HashedSession> sessions = new ArrayList<HashedSession>(_sessions.values());
+        Collections.sort(sessions, new Comparator<HashedSession>() {
+            public int compare(HashedSession a, HashedSession b) {
+                long difference = a.getAccessed() - b.getAccessed();
+                return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+            }
+        });
+        long total = 0;
+        for (HashedSession session : sessions) {
+            total += Math.max(0, estimateSize(session));
+        }
+        int spilledNow = 0;
+        for (HashedSession session : sessions) {
+            if (total <= heapLimit) {
+                break;
+            }
+            long size = estimateSize(session);
+            if (size >= 0 && spill(session)) {
+                total -= size;
+                spilledNow++;
+            }
+        }
+        if (spilledNow > 0) {
+            logger.log(TreeLogger.DEBUG, "Spilled " + spilledNow + " sessions; " + getResidentSessions()
+                    + " resident, " + getSpilledSessions() + " spilled");
+        }
+    }
+
+    /**
+     * Estimates the heap size of a session from the size of its serialized attributes.
+     *
+     * @param session the session.
+     * @return the estimated size, or -1 if the session can't be serialized.
+     */
+    private long estimateSize(HashedSession session) {
+        Long estimate = sizeEstimates.get(session.getClusterId());
+        if (estimate == null) {
+            Map<String, byte[]> attributes;
+            synchronized (session) {
+                attributes = serializeAttributes(session);
+            }
+            long size = -1;
+            if (attributes != null) {
+                size = 0;
+                for (Map.Entry<String, byte[]> entry : attributes.entrySet()) {
+                    size += entry.getKey().length() * 2 + entry.getValue().length;
+                }
+            }
+            estimate = size;
+            sizeEstimates.put(session.getClusterId(), estimate);
+        }
+        return estimate;
+    }
+
+    /**
+     * Moves a session into the spill area if it's idle and can be serialized.  Activation listeners are told the
+     * session is being passivated before its attributes are serialized, and are told it has been activated again if
+     * it stays resident.
+     *
+     * @param session the session.
+     * @return true if the session was spilled.
+     */
+    private boolean spill(HashedSession session) {
+        synchronized (spillLock) {
+            synchronized (session) {
+                String clusterId = session.getClusterId();
+                if (!session.isValid() || session.getRequests() > 0 || _sessions.get(clusterId) != session) {
+                    return false;
+                }
+                session.willPassivate();
+                boolean passivated = false;
+                try {
+                    Map<String, byte[]> attributes = serializeAttributes(session);
+                    if (attributes == null) {
+                        return false;
+                    }
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    DataOutputStream out = new DataOutputStream(bytes);
+                    out.writeLong(session.getAccessed());
+                    out.writeInt(session.getMaxInactiveInterval());
+                    writeSession(out, session, attributes);
+                    out.close();
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.size());
+                    buffer.put(bytes.toByteArray());
+                    buffer.flip();
+                    spilled.put(clusterId, buffer);
+                    spilledBytes.addAndGet(buffer.capacity());
+                    passivated = true;
+                }
+                catch (IOException e) {
+                    logger.log(TreeLogger.WARN, "Unable to spill session " + clusterId, e);
+                    return false;
+                }
+                catch (OutOfMemoryError e) {
+                    logger.log(TreeLogger.WARN, "The spill area is full; session " + clusterId + " stays resident");
+                    return false;
+                }
+                finally {
+                    if (!passivated) {
+                        session.didActivate();
+                    }
+                }
+                _sessions.remove(clusterId);
+                sizeEstimates.remove(clusterId);
+                spillCount.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reads a session back from the spill area into the session table.
+     *
+     * @param clusterId the session identifier.
+     * @return the session, or null if there's no such session.
+     */
+    private HashedSession pageIn(String clusterId) {
+        synchronized (spillLock) {
+            HashedSession session = _sessions.get(clusterId);
+            if (session != null) {
+                return session;
+            }
+            ByteBuffer buffer = spilled.remove(clusterId);
+            if (buffer == null) {
+                return null;
+            }
+            spilledBytes.addAndGet(-buffer.capacity());
+            ByteBuffer record = buffer.duplicate();
+            record.position(HEADER_SIZE);
+            byte[] bytes = new byte[record.remaining()];
+            record.get(bytes);
+            try {
+                session = readSession(new DataInputStream(new ByteArrayInputStream(bytes)));
+            }
+            catch (IOException e) {
+                logger.log(TreeLogger.WARN, "Unable to read spilled session " + clusterId, e);
+                return null;
+            }
+            _sessions.put(clusterId, session);
+            getSessionIdManager().addSession(session);
+            pageInCount.incrementAndGet();
+            return session;
+        }
+    }
+
+    /**
+     * Invalidates the spilled sessions that have expired.  Each one is read back first so that listeners see its
+     * attributes.
+     */
+    private void expireSpilledSessions() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, ByteBuffer> entry : spilled.entrySet()) {
+            ByteBuffer buffer = entry.getValue();
+            if (isExpired(buffer.getLong(ACCESSED_OFFSET), buffer.getInt(MAX_INACTIVE_OFFSET), now)) {
+                HashedSession session = pageIn(entry.getKey());
+                if (session != null) {
+                    try {
+                        session.invalidate();
+                    }
+                    catch (IllegalStateException ignore) {}
+                }
+            }
+        }
+    }
+
+    /**
+     * Logs the resident and spilled session counts.
+     *
+     * @param logger the logger to use.
+     */
+    public void reportStatistics(TreeLogger logger) {
+        TreeLogger branch = logger.branch(TreeLogger.INFO, "Sessions: " + getResidentSessions() + " resident, "
+                + getSpilledSessions() + " spilled (" + getSpilledBytes() / 1024 + " KB off-heap)");
+        branch.log(TreeLogger.INFO, "Spilled " + spillCount.get() + " times, read back " + pageInCount.get()
+                + " times; skipped " + getSkippedSessions() + " sessions that couldn't be saved");
+    }
+}
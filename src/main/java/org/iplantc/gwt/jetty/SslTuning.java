@@ -0,0 +1,134 @@
+package org.iplantc.gwt.jetty;
+
+import com.google.gwt.core.ext.TreeLogger;
+import java.util.Arrays;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+
+/**
+ * Optional SSL session and handshake settings.  Settings that haven't been specified are left at the defaults used by
+ * Jetty and the JRE.
+ *
+ * Stateless session tickets aren't configurable here because JSSE only reads the setting from a JVM-wide system
+ * property the first time an SSL context is created, which may already have happened in the development mode JVM
+ * before the launcher starts, and the property would also affect every other SSL client in that JVM.  Pass
+ * {@code -Djdk.tls.server.enableSessionTicketExtension} on the command line instead.
+ */
+public class SslTuning {
+
+    /**
+     * The name of the cipher suite preset that only includes fast AEAD cipher suites with forward secrecy.
+     */
+    public static final String FAST_CIPHER_SUITES = "fast";
+
+    /**
+     * The name of the protocol preset that only includes current TLS versions.
+     */
+    public static final String MODERN_PROTOCOLS = "modern";
+
+    /**
+     * The cipher suites included in the fast preset.
+     */
+    private static final String[] FAST_CIPHER_SUITE_LIST = {
+            "TLS_AES_128_GCM_SHA256",
+            "TLS_AES_256_GCM_SHA384",
+            "TLS_CHACHA20_POLY1305_SHA256",
+            "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256",
+            "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+            "TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384",
+            "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384"
+    };
+
+    /**
+     * The protocols included in the modern preset.
+     */
+    private static final String[] MODERN_PROTOCOL_LIST = {"TLSv1.2", "TLSv1.3"};
+
+    /**
+     * The maximum number of sessions to cache, or a negative number to use the default.
+     */
+    private int sessionCacheSize = -1;
+
+    /**
+     * The number of seconds to keep cached sessions, or a negative number to use the default.
+     */
+    private int sessionTimeout = -1;
+
+    /**
+     * Indicates whether or not session caching is enabled, or null to use the default.
+     */
+    private Boolean sessionCaching = null;
+
+    /**
+     * The cipher suites to allow, or null to allow the default cipher suites.
+     */
+    private String[] cipherSuites = null;
+
+    /**
+     * The protocols to allow, or null to allow the default protocols.
+     */
+    private String[] protocols = null;
+
+    /**
+     * @param sessionCacheSize the maximum number of sessions to cache.
+     */
+    public void setSessionCacheSize(int sessionCacheSize) {
+        this.sessionCacheSize = sessionCacheSize;
+    }
+
+    /**
+     * @param sessionTimeout the number of seconds to keep cached sessions.
+     */
+    public void setSessionTimeout(int sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    /**
+     * @param sessionCaching true if session caching, and therefore session resumption, should be enabled.
+     */
+    public void setSessionCaching(boolean sessionCaching) {
+        this.sessionCaching = sessionCaching;
+    }
+
+    /**
+     * @param cipherSuites the cipher suites to allow, separated by colons, or the name of a cipher suite preset.
+     */
+    public void setCipherSuites(String cipherSuites) {
+        this.cipherSuites = FAST_CIPHER_SUITES.equals(cipherSuites) ? FAST_CIPHER_SUITE_LIST : cipherSuites.split(":");
+    }
+
+    /**
+     * @param protocols the protocols to allow, separated by colons, or the name of a protocol preset.
+     */
+    public void setProtocols(String protocols) {
+        this.protocols = MODERN_PROTOCOLS.equals(protocols) ? MODERN_PROTOCOL_LIST : protocols.split(":");
+    }
+
+    /**
+     * Applies the settings to an SSL context factory.  This has to be done before the context factory is started.
+     *
+     * @param contextFactory the SSL context factory.
+     * @param logger the logger to use when logging the settings that are applied.
+     */
+    public void apply(SslContextFactory contextFactory, TreeLogger logger) {
+        if (sessionCacheSize >= 0) {
+            logger.log(TreeLogger.TRACE, "SSL session cache size: " + sessionCacheSize);
+            contextFactory.setSslSessionCacheSize(sessionCacheSize);
+        }
+        if (sessionTimeout >= 0) {
+            logger.log(TreeLogger.TRACE, "SSL session timeout: " + sessionTimeout + " seconds");
+            contextFactory.setSslSessionTimeout(sessionTimeout);
+        }
+        if (sessionCaching != null) {
+            logger.log(TreeLogger.TRACE, "SSL session caching enabled: " + sessionCaching);
+            contextFactory.setSessionCachingEnabled(sessionCaching);
+        }
+        if (cipherSuites != null) {
+            logger.log(TreeLogger.TRACE, "SSL cipher suites: " + Arrays.asList(cipherSuites));
+            contextFactory.setIncludeCipherSuites(cipherSuites);
+        }
+        if (protocols != null) {
+            logger.log(TreeLogger.TRACE, "SSL protocols: " + Arrays.asList(protocols));
+            contextFactory.setIncludeProtocols(protocols);
+        }
+    }
+}
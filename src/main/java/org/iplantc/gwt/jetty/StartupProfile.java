@@ -0,0 +1,167 @@
+package org.iplantc.gwt.jetty;
+
+import com.google.gwt.core.ext.TreeLogger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Records how long each phase of the servlet container startup takes.  Phases may run sequentially in the calling
+ * thread or concurrently in an executor service.  The recorded timings are reported as a single startup profile.
+ */
+public class StartupProfile {
+
+    /**
+     * The time at which the startup began.
+     */
+    private final long startTime = System.nanoTime();
+
+    /**
+     * The phases that have completed.
+     */
+    private final List<Phase> phases = new ArrayList<Phase>();
+
+    /**
+     * Runs a phase in the calling thread.
+     *
+     * @param name the name of the phase.
+     * @param task the task that implements the phase.
+     * @param <T> the type of the phase result.
+     * @return the phase result.
+     * @throws Exception if the phase fails.
+     */
+    public <T> T run(String name, Callable<T> task) throws Exception {
+        return timed(name, task).call();
+    }
+
+    /**
+     * Submits a phase to an executor service.
+     *
+     * @param executor the executor service.
+     * @param name the name of the phase.
+     * @param task the task that implements the phase.
+     * @param <T> the type of the phase result.
+     * @return a future that can be used to wait for the phase result.
+     */
+    public <T> Future<T> submit(ExecutorService executor, String name, Callable<T> task) {
+        return executor.submit(timed(name, task));
+    }
+
+    /**
+     * Waits for a phase that was submitted to an executor service to complete.
+     *
+     * @param future the future returned when the phase was submitted.
+     * @param <T> the type of the phase result.
+     * @return the phase result.
+     * @throws Exception if the phase fails.
+     */
+    public static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Logs the startup profile.
+     *
+     * @param logger the logger to use.
+     */
+    public void report(TreeLogger logger) {
+        TreeLogger branch = logger.branch(TreeLogger.INFO, "Startup completed in " + millisSince(startTime) + " ms");
+        if (branch.isLoggable(TreeLogger.TRACE)) {
+            synchronized (phases) {
+                for (Phase phase : phases) {
+                    branch.log(TreeLogger.TRACE, phase.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Wraps a phase task in a task that records its timing.
+     *
+     * @param name the name of the phase.
+     * @param task the task that implements the phase.
+     * @param <T> the type of the phase result.
+     * @return the wrapped task.
+     */
+    private <T> Callable<T> timed(final String name, final Callable<T> task) {
+        return new Callable<T>() {
+            public T call() throws Exception {
+                long phaseStart = System.nanoTime();
+                try {
+                    return task.call();
+                }
+                finally {
+                    Phase phase = new Phase(name, phaseStart - startTime, System.nanoTime() - phaseStart);
+                    synchronized (phases) {
+                        phases.add(phase);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Calculates the number of milliseconds that have elapsed since a time obtained from {@link System#nanoTime()}.
+     *
+     * @param nanoTime the time.
+     * @return the number of milliseconds.
+     */
+    private static long millisSince(long nanoTime) {
+        return (System.nanoTime() - nanoTime) / 1000000;
+    }
+
+    /**
+     * The timing of a single startup phase.
+     */
+    private static class Phase {
+
+        /**
+         * The name of the phase.
+         */
+        private final String name;
+
+        /**
+         * The number of nanoseconds between the beginning of the startup and the beginning of the phase.
+         */
+        private final long offset;
+
+        /**
+         * The number of nanoseconds the phase took.
+         */
+        private final long duration;
+
+        /**
+         * @param name the name of the phase.
+         * @param offset the number of nanoseconds between the beginning of the startup and the phase.
+         * @param duration the number of nanoseconds the phase took.
+         */
+        private Phase(String name, long offset, long duration) {
+            this.name = name;
+            this.offset = offset;
+            this.duration = duration;
+        }
+
+        /**
+         * @return a description of the phase timing.
+         */
+        @Override
+        public String toString() {
+            return name + ": " + duration / 1000000 + " ms (started at " + offset / 1000000 + " ms)";
+        }
+    }
+}
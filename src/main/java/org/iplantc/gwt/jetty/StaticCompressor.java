@@ -0,0 +1,288 @@
+package org.iplantc.gwt.jetty;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.thirdparty.guava.common.io.Closeables;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.component.AbstractLifeCycle.AbstractLifeCycleListener;
+import org.eclipse.jetty.util.component.LifeCycle;
+
+/**
+ * Compresses eligible static files in the web application root directory into a sidecar cache directory so that they
+ * can be served without compressing them on every request.  When registered as a life cycle listener on the web
+ * application context, a compression pass runs in the background each time the web application is started, which
+ * includes every refresh.  Only files that have changed since the last pass are compressed again.
+ *
+ * Brotli variants are not produced because the JRE has no Brotli encoder, but {@code .br} files placed in the cache
+ * directory by an external tool are served to clients that accept them.  Because whatever is in the cache directory
+ * is sent to browsers, the default cache directory is kept in the launcher's private directory.
+ */
+public class StaticCompressor extends AbstractLifeCycleListener {
+
+    /**
+     * The file name suffix used for gzip-compressed files.
+     */
+    public static final String GZIP_SUFFIX = ".gz";
+
+    /**
+     * The file name suffix used for Brotli-compressed files.
+     */
+    public static final String BROTLI_SUFFIX = ".br";
+
+    /**
+     * The extensions of the files that are worth compressing.
+     */
+    private static final String[] COMPRESSIBLE_EXTENSIONS = {
+            ".js", ".html", ".htm", ".css", ".json", ".svg", ".txt", ".xml", ".rpc"
+    };
+
+    /**
+     * Files smaller than this aren't worth compressing.
+     */
+    private static final long MIN_COMPRESSIBLE_SIZE = 1024;
+
+    /**
+     * The logger to use for informational and error messages.
+     */
+    private final TreeLogger logger;
+
+    /**
+     * The root directory for the web application.
+     */
+    private final File appRootDir;
+
+    /**
+     * The directory containing the compressed files.
+     */
+    private final File cacheDir;
+
+    /**
+     * Used to compress files in parallel.
+     */
+    private final ExecutorService compressionPool = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new DaemonThreadFactory("static-compressor"));
+
+    /**
+     * Used to run compression passes in the background.
+     */
+    private final ExecutorService passRunner
+            = Executors.newSingleThreadExecutor(new DaemonThreadFactory("static-compressor-pass"));
+
+    /**
+     * @param logger the logger to use for informational and error messages.
+     * @param appRootDir the root directory for the web application.
+     * @param cacheDir the directory containing the compressed files.
+     */
+    public StaticCompressor(TreeLogger logger, File appRootDir, File cacheDir) {
+        this.logger = logger;
+        this.appRootDir = appRootDir;
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Gets the default cache directory for a web application root directory, which is in the launcher's private
+     * directory.
+     *
+     * @param appRootDir the root directory for the web application.
+     * @return the cache directory.
+     * @throws IOException if the private directory can't be used.
+     * @see PrivateFiles
+     */
+    public static File defaultCacheDir(File appRootDir) throws IOException {
+        return PrivateFiles.defaultLocation("precompressed-", appRootDir, "");
+    }
+
+    /**
+     * Starts a compression pass in the background when the web application is starting.
+     *
+     * @param event the life cycle that is starting.
+     */
+    @Override
+    public void lifeCycleStarting(LifeCycle event) {
+        passRunner.submit(new Runnable() {
+            public void run() {
+                compress();
+            }
+        });
+    }
+
+    /**
+     * Compresses every eligible file that has changed since the last pass, blocking until the pass completes.  Only
+     * one pass runs at a time.
+     */
+    public synchronized void compress() {
+        long start = System.currentTimeMillis();
+        List<File> files = new ArrayList<File>();
+        findCompressibleFiles(appRootDir, files);
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (final File file : files) {
+            results.add(compressionPool.submit(new Callable<Boolean>() {
+                public Boolean call() {
+                    return compress(file);
+                }
+            }));
+        }
+        int compressed = 0;
+        for (Future<Boolean> result : results) {
+            try {
+                if (result.get()) {
+                    compressed++;
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (ExecutionException e) {
+                logger.log(TreeLogger.WARN, "Unable to precompress a static file", e.getCause());
+            }
+        }
+        if (logger.isLoggable(TreeLogger.TRACE)) {
+            logger.log(TreeLogger.TRACE, "Precompressed " + compressed + " of " + files.size() + " static files in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
+    /**
+     * Finds the up-to-date compressed version of a file.  A compressed file is up to date if it was modified no earlier
+     * than the file itself, so that files produced by an external tool are accepted as well as the ones produced by
+     * this compressor, which are given the same modification time as the file.  Only files with one of the
+     * compressible extensions have compressed versions.
+     *
+     * @param file the file in the web application root directory.
+     * @param suffix the file name suffix for the compression format.
+     * @return the compressed file or null if there's no up-to-date compressed version of the file.
+     */
+    public File findCompressed(File file, String suffix) {
+        if (!hasCompressibleExtension(file)) {
+            return null;
+        }
+        File compressed = cacheFileFor(file, suffix);
+        return compressed != null && compressed.isFile() && compressed.lastModified() >= file.lastModified()
+                ? compressed
+                : null;
+    }
+
+    /**
+     * Compresses a single file if it has changed since it was last compressed.
+     *
+     * @param file the file to compress.
+     * @return true if the file was compressed.
+     */
+    private boolean compress(File file) {
+        if (findCompressed(file, GZIP_SUFFIX) != null) {
+            return false;
+        }
+        File compressed = cacheFileFor(file, GZIP_SUFFIX);
+        File tempFile = null;
+        File parent = compressed.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            logger.log(TreeLogger.WARN, "Unable to create directory " + parent);
+            return false;
+        }
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            tempFile = PrivateFiles.createTempFile(compressed);
+            in = new FileInputStream(file);
+            out = new GZIPOutputStream(new FileOutputStream(tempFile));
+            IO.copy(in, out);
+            out.close();
+            out = null;
+            if (compressed.exists() && !compressed.delete() || !tempFile.renameTo(compressed)) {
+                throw new IOException("unable to replace " + compressed);
+            }
+            compressed.setLastModified(file.lastModified());
+            return true;
+        }
+        catch (IOException e) {
+            logger.log(TreeLogger.WARN, "Unable to precompress " + file, e);
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+            return false;
+        }
+        finally {
+            Closeables.closeQuietly(in);
+            Closeables.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Recursively finds all of the compressible files in a directory.
+     *
+     * @param dir the directory to search.
+     * @param files the list to add the files to.
+     */
+    private void findCompressibleFiles(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                if (!child.getName().equals("WEB-INF") && !child.getName().equals("META-INF")) {
+                    findCompressibleFiles(child, files);
+                }
+            }
+            else if (isCompressible(child)) {
+                files.add(child);
+            }
+        }
+    }
+
+    /**
+     * Determines whether or not a file is worth compressing.
+     *
+     * @param file the file.
+     * @return true if the file should be compressed.
+     */
+    private boolean isCompressible(File file) {
+        return file.length() >= MIN_COMPRESSIBLE_SIZE && hasCompressibleExtension(file);
+    }
+
+    /**
+     * Determines whether or not a file has one of the compressible extensions.
+     *
+     * @param file the file.
+     * @return true if the file has a compressible extension.
+     */
+    private boolean hasCompressibleExtension(File file) {
+        String name = file.getName().toLowerCase();
+        for (String extension : COMPRESSIBLE_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines the location of the compressed version of a file.
+     *
+     * @param file the file in the web application root directory.
+     * @param suffix the file name suffix for the compression format.
+     * @return the location of the compressed file or null if the file isn't in the web application root directory.
+     */
+    private File cacheFileFor(File file, String suffix) {
+        String rootPath = appRootDir.getAbsolutePath() + File.separator;
+        String filePath = file.getAbsolutePath();
+        if (!filePath.startsWith(rootPath)) {
+            return null;
+        }
+        return new File(cacheDir, filePath.substring(rootPath.length()) + suffix);
+    }
+}
@@ -0,0 +1,203 @@
+package org.iplantc.gwt.jetty;
+
+import com.google.gwt.thirdparty.guava.common.io.Closeables;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.http.HttpHeaders;
+import org.eclipse.jetty.http.HttpMethods;
+import org.eclipse.jetty.io.Buffer;
+import org.eclipse.jetty.io.nio.ChannelEndPoint;
+import org.eclipse.jetty.security.ConstraintAware;
+import org.eclipse.jetty.security.SecurityHandler;
+import org.eclipse.jetty.server.AbstractHttpConnection;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.URIUtil;
+import org.eclipse.jetty.webapp.WebAppContext;
+
+/**
+ * Static methods for locating static files in the web application root directory from request handlers that sit in
+ * front of the web application context.
+ */
+public class StaticResources {
+
+    /**
+     * The extensions of files that may be served without going through the web application.
+     */
+    private static final Set<String> STATIC_EXTENSIONS = new HashSet<String>(Arrays.asList(
+            "html", "htm", "css", "js", "map", "json", "txt", "xml", "svg", "png", "gif", "jpg", "jpeg", "ico", "webp",
+            "woff", "woff2", "ttf", "eot", "otf", "pdf", "zip", "gz", "br", "wasm", "mp3", "mp4", "webm", "swf"));
+
+    // Prevent instantiation.
+    private StaticResources() {
+    }
+
+    /**
+     * Determines whether or not a request is a GET or HEAD request.
+     *
+     * @param request the request.
+     * @return true if the request method is GET or HEAD.
+     */
+    public static boolean isGetOrHead(HttpServletRequest request) {
+        String method = request.getMethod();
+        return HttpMethods.GET.equals(method) || HttpMethods.HEAD.equals(method);
+    }
+
+    /**
+     * Resolves a request target to a readable regular file in the web application root directory.  Targets that
+     * escape the root directory or refer to protected directories are never resolved.
+     *
+     * @param appRootDir the root directory for the web application.
+     * @param target the request target.
+     * @return the file or null if the target doesn't refer to a readable regular file.
+     */
+    public static File resolve(File appRootDir, String target) {
+        String path = URIUtil.canonicalPath(target);
+        if (path == null || !path.startsWith("/") || path.endsWith("/") || isProtected(path)) {
+            return null;
+        }
+        File file = new File(appRootDir, path.substring(1));
+        return file.isFile() && file.canRead() ? file : null;
+    }
+
+    /**
+     * Determines whether or not a file is an ordinary static file that may be served without going through the web
+     * application's servlets and filters.  Only files with one of a fixed set of extensions qualify, so that JSP
+     * sources and anything else a servlet normally mediates are never served directly.
+     *
+     * @param file the file.
+     * @return true if the file has a static file extension.
+     */
+    public static boolean isStaticFile(File file) {
+        return hasStaticExtension(file.getName());
+    }
+
+    /**
+     * Determines whether or not a path ends with one of the static file extensions.
+     *
+     * @param path the path or file name.
+     * @return true if the path has a static file extension.
+     */
+    public static boolean hasStaticExtension(String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1).toLowerCase();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && STATIC_EXTENSIONS.contains(name.substring(dot + 1));
+    }
+
+    /**
+     * Determines whether or not a web application declares security constraints.  Files are never served from in
+     * front of such a web application, because the constraints are only enforced inside it.
+     *
+     * @param wac the web application context.
+     * @return true if the web application has security constraints.
+     */
+    public static boolean hasSecurityConstraints(WebAppContext wac) {
+        SecurityHandler securityHandler = wac.getSecurityHandler();
+        return securityHandler instanceof ConstraintAware
+                && !((ConstraintAware) securityHandler).getConstraintMappings().isEmpty();
+    }
+
+    /**
+     * Builds a weak entity tag for a file based on its modification time and length.
+     *
+     * @param file the file.
+     * @return the entity tag.
+     */
+    public static String weakEtag(File file) {
+        return "W/\"" + Long.toHexString(file.lastModified()) + "-" + Long.toHexString(file.length()) + "\"";
+    }
+
+    /**
+     * Determines whether or not the client already has the current version of a file, in which case the request should
+     * be answered with a 304 status.  The entity tag is compared with If-None-Match if the client sent one, and the
+     * modification time is compared with If-Modified-Since otherwise.
+     *
+     * @param request the servlet request.
+     * @param etag the entity tag of the current version, or null if the file has no entity tag.
+     * @param lastModified the modification time of the current version, truncated to whole seconds.
+     * @return true if the client's copy is current.
+     */
+    public static boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return etag != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"));
+        }
+        long ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince >= 0 && ifModifiedSince >= lastModified;
+    }
+
+    /**
+     * Sends the contents of a file as the response body and marks the request as handled.  The caller is expected to
+     * have set all of the response headers except for the content length.  Files at least as large as the mapped file
+     * cache's threshold are memory mapped and handed directly to the connection when the connection is backed by an
+     * NIO channel, so their contents never pass through a heap buffer.
+     *
+     * @param baseRequest the Jetty request.
+     * @param response the servlet response.
+     * @param file the file to send.
+     * @param mappedFiles the cache of memory mapped files, or null to disable mapping.
+     * @throws IOException if an I/O error occurs.
+     */
+    public static void sendFile(Request baseRequest, HttpServletResponse response, File file,
+            MappedFileCache mappedFiles) throws IOException {
+        baseRequest.setHandled(true);
+        if (isZeroCopyCandidate(baseRequest, file, mappedFiles)) {
+            ServletOutputStream out = response.getOutputStream();
+            if (out instanceof AbstractHttpConnection.Output) {
+                Buffer content = mappedFiles.get(file);
+                response.setContentLength(content.length());
+                if (!HttpMethods.HEAD.equals(baseRequest.getMethod())) {
+                    ((AbstractHttpConnection.Output) out).sendContent(content);
+                }
+                return;
+            }
+        }
+        response.setContentLength((int) file.length());
+        if (HttpMethods.HEAD.equals(baseRequest.getMethod())) {
+            return;
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            IO.copy(in, response.getOutputStream());
+        }
+        finally {
+            if (in != null) {
+                Closeables.closeQuietly(in);
+            }
+        }
+    }
+
+    /**
+     * Determines whether or not a file should be memory mapped when it's sent.
+     *
+     * @param baseRequest the Jetty request.
+     * @param file the file to send.
+     * @param mappedFiles the cache of memory mapped files, or null to disable mapping.
+     * @return true if the file should be memory mapped.
+     */
+    private static boolean isZeroCopyCandidate(Request baseRequest, File file, MappedFileCache mappedFiles) {
+        long length = file.length();
+        return mappedFiles != null && length >= mappedFiles.getThreshold() && length <= Integer.MAX_VALUE
+                && baseRequest.getConnection().getEndPoint() instanceof ChannelEndPoint;
+    }
+
+    /**
+     * Determines whether or not a path refers to one of the directories that may not be served directly.
+     *
+     * @param path the canonical path.
+     * @return true if the path is protected.
+     */
+    private static boolean isProtected(String path) {
+        String upperCasePath = path.toUpperCase();
+        return upperCasePath.startsWith("/WEB-INF/") || upperCasePath.startsWith("/META-INF/");
+    }
+}
@@ -0,0 +1,17 @@
+package org.iplantc.gwt.jetty;
+
+import com.google.gwt.core.ext.TreeLogger;
+
+/**
+ * Implemented by server components that collect statistics which should be reported when the servlet container stops
+ * or when the statistics are requested explicitly.
+ */
+public interface StatisticsReporter {
+
+    /**
+     * Logs the statistics collected by this component.
+     *
+     * @param logger the logger to use.
+     */
+    public void reportStatistics(TreeLogger logger);
+}
@@ -0,0 +1,128 @@
+package org.iplantc.gwt.jetty;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/**
+ * A thread pool that records when each connection task was dispatched, so that the time the task spent waiting for a
+ * thread can be measured once it runs.  Jetty only timestamps a request once its headers have been parsed, which
+ * happens on the pooled thread, so the request's own timestamp doesn't include the time the connection spent in the
+ * thread pool's queue.
+ *
+ * The tasks themselves are run by another thread pool.  The connector's acceptor and selector loops are passed through
+ * without being timestamped.
+ */
+public class TimestampingThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+    /**
+     * The time at which the task running on the current thread was dispatched, or null if it hasn't been recorded or
+     * has already been taken.
+     */
+    private static final ThreadLocal<Long> DISPATCH_TIME = new ThreadLocal<Long>();
+
+    /**
+     * The thread pool that runs the tasks.
+     */
+    private final ThreadPool delegate;
+
+    /**
+     * @param delegate the thread pool that runs the tasks.
+     */
+    public TimestampingThreadPool(ThreadPool delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Takes the time the task running on the current thread waited in the queue.  The time is cleared once it has been
+     * taken, so that only the first request handled by the task is charged with the wait.
+     *
+     * @return the wait in nanoseconds, or -1 if the current thread isn't running a timestamped task.
+     */
+    public static long takeQueueWait() {
+        Long dispatchTime = DISPATCH_TIME.get();
+        if (dispatchTime == null) {
+            return -1;
+        }
+        DISPATCH_TIME.remove();
+        return Math.max(0, System.nanoTime() - dispatchTime);
+    }
+
+    /**
+     * Starts the thread pool that runs the tasks.
+     *
+     * @throws Exception if the thread pool can't be started.
+     */
+    @Override
+    protected void doStart() throws Exception {
+        if (delegate instanceof LifeCycle) {
+            ((LifeCycle) delegate).start();
+        }
+    }
+
+    /**
+     * Stops the thread pool that runs the tasks.
+     *
+     * @throws Exception if the thread pool can't be stopped.
+     */
+    @Override
+    protected void doStop() throws Exception {
+        if (delegate instanceof LifeCycle) {
+            ((LifeCycle) delegate).stop();
+        }
+    }
+
+    /**
+     * Dispatches a task, recording the time at which it was dispatched.
+     *
+     * @param job the task.
+     * @return true if the task was dispatched.
+     */
+    public boolean dispatch(final Runnable job) {
+        if (VirtualThreadPool.isInfrastructure(job)) {
+            return delegate.dispatch(job);
+        }
+        final long dispatchTime = System.nanoTime();
+        return delegate.dispatch(new Runnable() {
+            public void run() {
+                DISPATCH_TIME.set(dispatchTime);
+                try {
+                    job.run();
+                }
+                finally {
+                    DISPATCH_TIME.remove();
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for the thread pool to stop.
+     *
+     * @throws InterruptedException if the current thread is interrupted while waiting.
+     */
+    public void join() throws InterruptedException {
+        delegate.join();
+    }
+
+    /**
+     * @return the number of threads in the pool.
+     */
+    public int getThreads() {
+        return delegate.getThreads();
+    }
+
+    /**
+     * @return the number of idle threads in the pool.
+     */
+    public int getIdleThreads() {
+        return delegate.getIdleThreads();
+    }
+
+    /**
+     * @return true if the pool is low on threads.
+     */
+    public boolean isLowOnThreads() {
+        return delegate.isLowOnThreads();
+    }
+}
@@ -0,0 +1,247 @@
+package org.iplantc.gwt.jetty;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jetty.io.nio.SelectorManager;
+import org.eclipse.jetty.server.AbstractConnector;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/**
+ * A thread pool that runs each request on its own virtual thread, so that blocking servlet code doesn't tie up a
+ * scarce platform thread.  A semaphore limits the number of tasks that run concurrently to provide back-pressure; tasks
+ * that can't obtain a permit wait on their own virtual threads, so dispatching a task never blocks the caller.
+ *
+ * The connector's acceptor and selector loops run for the lifetime of the connector, so they're run on platform
+ * threads and don't count against the concurrency limit.
+ *
+ * Virtual threads require Java 21 or later.  They're created through reflection so that the launcher still runs on
+ * older JVMs; use {@link #isSupported()} to check for them before creating an instance.
+ *
+ * Jetty 8 blocks inside {@code synchronized} methods and {@code Object.wait()} when a servlet reads or writes faster
+ * than the client, and throughout each connection of the blocking SSL connector.  Before Java 24 a virtual thread that
+ * blocks in a monitor pins its carrier thread, so under such load the pool is effectively limited to the number of
+ * carrier threads and can stall once they're all pinned.  The launcher therefore only uses this pool with the NIO
+ * connector and warns when it's used on a JVM that pins; {@link #isPinningFree()} reports whether the JVM is affected.
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+    /**
+     * The name of the factory method that creates an executor service backed by virtual threads.
+     */
+    private static final String FACTORY_METHOD = "newVirtualThreadPerTaskExecutor";
+
+    /**
+     * The maximum number of tasks that may run concurrently.
+     */
+    private final int maxConcurrency;
+
+    /**
+     * Limits the number of tasks that run concurrently.
+     */
+    private final Semaphore permits;
+
+    /**
+     * The number of tasks that are running or waiting for a permit.
+     */
+    private final AtomicInteger activeTasks = new AtomicInteger();
+
+    /**
+     * The number of tasks that are waiting for a permit.
+     */
+    private final AtomicInteger waitingTasks = new AtomicInteger();
+
+    /**
+     * Runs request tasks on virtual threads.
+     */
+    private ExecutorService virtualExecutor;
+
+    /**
+     * Runs the connector's acceptor and selector loops on platform threads.
+     */
+    private ExecutorService infrastructureExecutor;
+
+    /**
+     * @param maxConcurrency the maximum number of tasks that may run concurrently.
+     */
+    public VirtualThreadPool(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * Determines whether or not the JVM supports virtual threads.
+     *
+     * @return true if virtual threads are supported.
+     */
+    public static boolean isSupported() {
+        try {
+            Executors.class.getMethod(FACTORY_METHOD);
+            return true;
+        }
+        catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Determines whether or not virtual threads that block in monitors release their carrier threads, which is the
+     * case from Java 24 onwards.
+     *
+     * @return true if blocking in a monitor doesn't pin the carrier thread.
+     */
+    public static boolean isPinningFree() {
+        try {
+            Object version = Runtime.class.getMethod("version").invoke(null);
+            return (Integer) version.getClass().getMethod("feature").invoke(version) >= 24;
+        }
+        catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates the executors.
+     *
+     * @throws Exception if the virtual thread executor can't be created.
+     */
+    @Override
+    protected void doStart() throws Exception {
+        Method factory = Executors.class.getMethod(FACTORY_METHOD);
+        virtualExecutor = (ExecutorService) factory.invoke(null);
+        infrastructureExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("jetty-infrastructure"));
+    }
+
+    /**
+     * Shuts down the executors, waiting briefly for running tasks to finish.
+     *
+     * @throws Exception if the current thread is interrupted while waiting.
+     */
+    @Override
+    protected void doStop() throws Exception {
+        virtualExecutor.shutdown();
+        infrastructureExecutor.shutdownNow();
+        virtualExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Dispatches a task.
+     *
+     * @param job the task.
+     * @return true if the task was dispatched.
+     */
+    public boolean dispatch(final Runnable job) {
+        if (!isRunning()) {
+            return false;
+        }
+        if (isInfrastructure(job)) {
+            try {
+                infrastructureExecutor.execute(job);
+                return true;
+            }
+            catch (RejectedExecutionException e) {
+                return false;
+            }
+        }
+        activeTasks.incrementAndGet();
+        try {
+            virtualExecutor.execute(new Runnable() {
+                public void run() {
+                    runWithPermit(job);
+                }
+            });
+            return true;
+        }
+        catch (RejectedExecutionException e) {
+            activeTasks.decrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Runs a task once a permit is available.
+     *
+     * @param job the task.
+     */
+    private void runWithPermit(Runnable job) {
+        try {
+            if (!permits.tryAcquire()) {
+                waitingTasks.incrementAndGet();
+                try {
+                    permits.acquireUninterruptibly();
+                }
+                finally {
+                    waitingTasks.decrementAndGet();
+                }
+            }
+            try {
+                job.run();
+            }
+            finally {
+                permits.release();
+            }
+        }
+        finally {
+            activeTasks.decrementAndGet();
+        }
+    }
+
+    /**
+     * Determines whether or not a task is one of the connector's long-running acceptor or selector loops.  Acceptors
+     * are declared directly in {@link AbstractConnector}; the per-connection tasks of blocking connectors are declared
+     * in its subclasses and are treated as request tasks.
+     *
+     * @param job the task.
+     * @return true if the task should run on a platform thread.
+     */
+    static boolean isInfrastructure(Runnable job) {
+        Class<?> enclosingClass = job.getClass().getEnclosingClass();
+        return enclosingClass == AbstractConnector.class
+                || enclosingClass != null && SelectorManager.class.isAssignableFrom(enclosingClass);
+    }
+
+    /**
+     * Waits for the thread pool to stop.
+     *
+     * @throws InterruptedException if the current thread is interrupted while waiting.
+     */
+    public void join() throws InterruptedException {
+        while (!isStopped()) {
+            Thread.sleep(100);
+        }
+        virtualExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the number of tasks that are running or waiting for a permit.
+     */
+    public int getThreads() {
+        return activeTasks.get();
+    }
+
+    /**
+     * @return the number of additional tasks that could run without waiting for a permit.
+     */
+    public int getIdleThreads() {
+        return permits.availablePermits();
+    }
+
+    /**
+     * @return true if tasks are waiting for a permit.
+     */
+    public boolean isLowOnThreads() {
+        return waitingTasks.get() > 0;
+    }
+
+    /**
+     * @return the maximum number of tasks that may run concurrently.
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+}
@@ -0,0 +1,120 @@
+package org.iplantc.gwt.jetty;
+
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.thirdparty.guava.common.io.Closeables;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.jetty.server.LocalConnector;
+
+/**
+ * Sends a scripted set of requests to the web application through an in-process connector so that servlets are
+ * initialized, classes are loaded and hot code is compiled before the server accepts real traffic.
+ *
+ * The warm-up script contains one request per line in the form {@code [METHOD] PATH}.  The method defaults to GET.
+ * Blank lines and lines beginning with {@code #} are ignored.
+ */
+public class WarmUp {
+
+    /**
+     * The logger to use for informational and error messages.
+     */
+    private final TreeLogger logger;
+
+    /**
+     * The in-process connector used to send the requests.
+     */
+    private final LocalConnector connector;
+
+    /**
+     * @param logger the logger to use for informational and error messages.
+     * @param connector the in-process connector used to send the requests.
+     */
+    public WarmUp(TreeLogger logger, LocalConnector connector) {
+        this.logger = logger;
+        this.connector = connector;
+    }
+
+    /**
+     * Sends every request in a warm-up script.  Failed requests are logged but don't stop the warm-up.
+     *
+     * @param script the warm-up script.
+     * @throws IOException if the script can't be read.
+     */
+    public void run(File script) throws IOException {
+        List<String[]> requests = readScript(script);
+        TreeLogger branch = logger.branch(TreeLogger.TRACE, "Warming up with " + requests.size() + " requests");
+        int failures = 0;
+        for (String[] request : requests) {
+            if (!send(request[0], request[1], branch)) {
+                failures++;
+            }
+        }
+        if (failures > 0) {
+            logger.log(TreeLogger.WARN, failures + " of " + requests.size() + " warm-up requests failed");
+        }
+    }
+
+    /**
+     * Sends a single warm-up request.
+     *
+     * @param method the request method.
+     * @param path the request path.
+     * @param logger the logger to use.
+     * @return true if the request succeeded.
+     */
+    private boolean send(String method, String path, TreeLogger logger) {
+        String request = method + " " + path + " HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Content-Length: 0\r\n"
+                + "Connection: close\r\n"
+                + "\r\n";
+        try {
+            String response = connector.getResponses(request);
+            String statusLine = response == null ? "" : response.split("\r\n", 2)[0];
+            boolean succeeded = statusLine.matches("HTTP/1\\.[01] [23]\\d\\d.*");
+            logger.log(succeeded ? TreeLogger.TRACE : TreeLogger.WARN, method + " " + path + ": " + statusLine);
+            return succeeded;
+        }
+        catch (Exception e) {
+            logger.log(TreeLogger.WARN, method + " " + path + " failed", e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads the requests from a warm-up script.
+     *
+     * @param script the warm-up script.
+     * @return a list of method and path pairs.
+     * @throws IOException if the script can't be read.
+     */
+    private List<String[]> readScript(File script) throws IOException {
+        List<String[]> requests = new ArrayList<String[]>();
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(script), "UTF-8"));
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                String[] components = line.split("\\s+", 2);
+                requests.add(components.length == 1
+                        ? new String[] {"GET", components[0]}
+                        : new String[] {components[0].toUpperCase(), components[1]});
+            }
+            return requests;
+        }
+        finally {
+            if (in != null) {
+                Closeables.closeQuietly(in);
+            }
+        }
+    }
+}
@@ -4,8 +4,12 @@ import com.google.gwt.core.ext.TreeLogger;
 import com.google.gwt.thirdparty.guava.common.base.Function;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.webapp.WebAppClassLoader;
 import org.eclipse.jetty.webapp.WebAppContext;
 
@@ -44,6 +48,16 @@ public class WebAppClassLoaderExtension extends WebAppClassLoader {
      */
     private final TreeLogger logger;
 
+    /**
+     * True if the jar files in WEB-INF/lib are loaded by a separate library class loader.
+     */
+    private final boolean tiered;
+
+    /**
+     * The names of the web application classes that have been loaded, in the order in which they were loaded.
+     */
+    private final Set<String> loadedClasses = new LinkedHashSet<String>();
+
     /**
      * @param parent the parent web application context.
      * @param logger the logger to use when logging classpath lookup warning messages.
@@ -52,6 +66,60 @@ public class WebAppClassLoaderExtension extends WebAppClassLoader {
     public WebAppClassLoaderExtension(WebAppContext parent, TreeLogger logger) throws IOException {
         super(BOOTSTRAP_ONLY_CLASS_LOADER, parent);
         this.logger = logger;
+        this.tiered = false;
+    }
+
+    /**
+     * Creates a class loader whose WEB-INF/lib jar files are loaded by a separate library class loader.  Only
+     * WEB-INF/classes is loaded by this class loader.
+     *
+     * @param libraryClassLoader the class loader for the WEB-INF/lib jar files.
+     * @param parent the parent web application context.
+     * @param logger the logger to use when logging classpath lookup warning messages.
+     * @throws IOException if an I/O error occurs.
+     */
+    public WebAppClassLoaderExtension(ClassLoader libraryClassLoader, WebAppContext parent, TreeLogger logger)
+            throws IOException {
+        super(libraryClassLoader, parent);
+        this.logger = logger;
+        this.tiered = true;
+    }
+
+    /**
+     * Adds the jar files in a library directory to the classpath, unless they're loaded by a library class loader.
+     *
+     * @param lib the library directory.
+     */
+    @Override
+    public void addJars(Resource lib) {
+        if (!tiered) {
+            super.addJars(lib);
+        }
+    }
+
+    /**
+     * Loads a class, recording its name if it was loaded from the web application rather than the system classpath.
+     *
+     * @param name the name of the class.
+     * @param resolve true if the class should be resolved.
+     * @return the class.
+     * @throws ClassNotFoundException if the class can't be found.
+     */
+    @Override
+    protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        Class<?> result = super.loadClass(name, resolve);
+        ClassLoader loader = result.getClassLoader();
+        if (loader == this || tiered && loader == getParent()) {
+            loadedClasses.add(name);
+        }
+        return result;
+    }
+
+    /**
+     * @return the names of the web application classes that have been loaded, in the order in which they were loaded.
+     */
+    public synchronized List<String> getLoadedClasses() {
+        return new ArrayList<String>(loadedClasses);
     }
 
     // Things to try when looking for resources.
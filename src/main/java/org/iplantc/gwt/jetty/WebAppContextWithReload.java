@@ -1,7 +1,16 @@
 package org.iplantc.gwt.jetty;
 
 import com.google.gwt.core.ext.TreeLogger;
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EventListener;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import org.eclipse.jetty.webapp.WebAppClassLoader;
 import org.eclipse.jetty.webapp.WebAppContext;
 
@@ -17,6 +26,18 @@ import org.eclipse.jetty.webapp.WebAppContext;
  */
 public class WebAppContextWithReload extends WebAppContext {
 
+    /**
+     * The configuration classes to use.  These are Jetty's defaults, except that META-INF information is discovered
+     * by scanning jar files concurrently.
+     */
+    private static final String[] CONFIGURATION_CLASSES = {
+            "org.eclipse.jetty.webapp.WebInfConfiguration",
+            "org.eclipse.jetty.webapp.WebXmlConfiguration",
+            ParallelMetaInfConfiguration.class.getName(),
+            "org.eclipse.jetty.webapp.FragmentConfiguration",
+            "org.eclipse.jetty.webapp.JettyWebXmlConfiguration"
+    };
+
     /**
      * The class loader to use.
      */
@@ -27,6 +48,41 @@ public class WebAppContextWithReload extends WebAppContext {
      */
     private final TreeLogger logger;
 
+    /**
+     * True if the WEB-INF/lib jar files should be loaded by a long-lived library class loader.
+     */
+    private boolean sharedLibraries = false;
+
+    /**
+     * The long-lived class loader for the WEB-INF/lib jar files, or null if it hasn't been created.
+     */
+    private LibraryClassLoader libraryClassLoader = null;
+
+    /**
+     * The profile of the classes loaded by the web application, or null if class loading isn't profiled.
+     */
+    private ClassLoadingProfile classLoadingProfile = null;
+
+    /**
+     * The session store file, or null if sessions aren't kept across reloads and restarts.
+     */
+    private File sessionStoreFile = null;
+
+    /**
+     * The maximum number of bytes of heap that sessions should occupy, or -1 if there's no limit.
+     */
+    private long sessionHeapLimit = -1;
+
+    /**
+     * The event listeners that are registered again each time the web application starts.
+     */
+    private final List<EventListener> permanentListeners = new ArrayList<EventListener>();
+
+    /**
+     * Completes when the classes listed in the profile have been preloaded, or null if nothing is being preloaded.
+     */
+    private Future<Integer> preloading = null;
+
     /**
      * @param logger the logger to use for error and warning messages.
      * @param webApp the path to the web application root directory.
@@ -35,18 +91,155 @@ public class WebAppContextWithReload extends WebAppContext {
     public WebAppContextWithReload(TreeLogger logger, String webApp, String contextPath) {
         super(webApp, contextPath);
         this.logger = logger;
+        setConfigurationClasses(CONFIGURATION_CLASSES);
+    }
+
+    /**
+     * Enables or disables the long-lived library class loader.  When it's enabled, the WEB-INF/lib jar files are
+     * loaded by a class loader that is kept across reloads as long as none of the jar files change, so that only the
+     * classes in WEB-INF/classes are loaded again.
+     *
+     * @param sharedLibraries true if the WEB-INF/lib jar files should be loaded by a long-lived class loader.
+     */
+    public void setSharedLibraries(boolean sharedLibraries) {
+        this.sharedLibraries = sharedLibraries;
+    }
+
+    /**
+     * Adds an event listener that stays registered across reloads.  Jetty discards the context's event listeners when
+     * the web application stops, so listeners added with {@link #addEventListener(EventListener)} only last until the
+     * first reload.
+     *
+     * @param listener the event listener.
+     */
+    public void addPermanentEventListener(EventListener listener) {
+        permanentListeners.add(listener);
+        addEventListener(listener);
+    }
+
+    /**
+     * Enables or disables class loading profiles.  When they're enabled, the names of the classes loaded by the web
+     * application are written to the profile file when it stops, and the classes listed in the file are preloaded in
+     * the background while it starts.
+     *
+     * @param profileFile the profile file, or null to disable class loading profiles.
+     */
+    public void setClassLoadingProfile(File profileFile) {
+        classLoadingProfile = profileFile == null ? null : new ClassLoadingProfile(logger, profileFile);
+    }
+
+    /**
+     * Enables session persistence.  Sessions are written to the session store file when the web application stops and
+     * restored from it when the web application starts, so they survive reloads and restarts.
+     *
+     * @param storeFile the session store file.
+     */
+    public void setSessionStore(File storeFile) {
+        sessionStoreFile = storeFile;
+        installSessionManager();
+    }
+
+    /**
+     * Limits the amount of heap used by sessions.  The least recently used idle sessions are spilled outside the heap
+     * when the limit is exceeded.
+     *
+     * @param heapLimit the maximum number of bytes of heap that sessions should occupy.
+     */
+    public void setSessionHeapLimit(long heapLimit) {
+        sessionHeapLimit = heapLimit;
+        installSessionManager();
+    }
+
+    /**
+     * Installs a session manager that implements the session persistence and heap limit settings.
+     */
+    private void installSessionManager() {
+        getSessionHandler().setSessionManager(sessionHeapLimit >= 0
+                ? new SpillingSessionManager(logger, sessionStoreFile, sessionHeapLimit)
+                : new PersistentSessionManager(logger, sessionStoreFile));
     }
 
     /**
-     * Starts the web application, adding a specialized class loader.
+     * Starts the web application, adding a specialized class loader and registering the permanent event listeners.
+     * If classes are being preloaded, this method doesn't return until they have all been loaded.
      *
      * @throws Exception if an error occurs.
      */
     @Override
     protected void doStart() throws Exception {
-        classLoader = new WebAppClassLoaderExtension(this, logger);
+        classLoader = sharedLibraries
+                ? new WebAppClassLoaderExtension(getLibraryClassLoader(), this, logger)
+                : new WebAppClassLoaderExtension(this, logger);
         setClassLoader(classLoader);
-        super.doStart();
+        EventListener[] listeners = getEventListeners();
+        List<EventListener> registered = listeners == null
+                ? Collections.<EventListener>emptyList()
+                : Arrays.asList(listeners);
+        for (EventListener listener : permanentListeners) {
+            if (!registered.contains(listener)) {
+                addEventListener(listener);
+            }
+        }
+        try {
+            super.doStart();
+        }
+        finally {
+            awaitPreloading();
+        }
+    }
+
+    /**
+     * Configures the web application and, once the class loader's classpath is complete, starts preloading the classes
+     * listed in the class loading profile so that they load while the servlets are being initialized.
+     *
+     * @throws Exception if an error occurs.
+     */
+    @Override
+    public void configure() throws Exception {
+        super.configure();
+        if (classLoadingProfile != null) {
+            preloading = classLoadingProfile.startPreloading(classLoader);
+        }
+    }
+
+    /**
+     * Waits for the classes listed in the class loading profile to be preloaded.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    private void awaitPreloading() throws InterruptedException {
+        if (preloading == null) {
+            return;
+        }
+        try {
+            preloading.get();
+        }
+        catch (ExecutionException e) {
+            logger.log(TreeLogger.WARN, "Unable to preload classes", e.getCause());
+        }
+        finally {
+            preloading = null;
+        }
+    }
+
+    /**
+     * Gets the long-lived class loader for the WEB-INF/lib jar files, replacing it if any of the jar files have
+     * changed since it was created.
+     *
+     * @return the library class loader.
+     * @throws IOException if the jar files can't be listed.
+     */
+    private LibraryClassLoader getLibraryClassLoader() throws IOException {
+        File[] jars = LibraryClassLoader.listJars(new File(getWar(), "WEB-INF/lib"));
+        String fingerprint = LibraryClassLoader.fingerprint(jars);
+        if (libraryClassLoader == null || !libraryClassLoader.getFingerprint().equals(fingerprint)) {
+            if (libraryClassLoader != null) {
+                logger.log(TreeLogger.INFO, "WEB-INF/lib has changed; reloading library classes");
+            }
+            ClassLoader systemClassLoader = Thread.currentThread().getContextClassLoader();
+            libraryClassLoader = new LibraryClassLoader(jars, systemClassLoader, this);
+        }
+        return libraryClassLoader;
     }
 
     /**
@@ -57,6 +250,9 @@ public class WebAppContextWithReload extends WebAppContext {
     @Override
     protected void doStop() throws Exception {
         super.doStop();
+        if (classLoadingProfile != null) {
+            classLoadingProfile.write(classLoader.getLoadedClasses());
+        }
         Class<?> jdbcUnloader = classLoader.loadClass("com.google.gwt.dev.shell.jetty.JDBCUnloader");
         Method unload = jdbcUnloader.getMethod("unload");
         unload.invoke(null);
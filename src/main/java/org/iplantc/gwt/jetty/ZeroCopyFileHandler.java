@@ -0,0 +1,104 @@
+package org.iplantc.gwt.jetty;
+
+import java.io.File;
+import java.io.IOException;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.http.HttpHeaders;
+import org.eclipse.jetty.io.Buffer;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.eclipse.jetty.webapp.WebAppContext;
+
+/**
+ * A handler that serves large static files by memory mapping them and writing the mapped buffers directly to the NIO
+ * connector.  Jetty's default servlet copies large files through heap byte arrays, which costs CPU and creates
+ * garbage when many clients are downloading large compiled GWT bundles at the same time.  Each file is mapped once and
+ * the mapping is reused until the file changes.
+ *
+ * Files served here never reach the web application's servlets and filters, so only files with a static file
+ * extension are served, files in {@code WEB-INF} and {@code META-INF} are never served, and nothing is served if the
+ * web application declares security constraints.  Smaller files, range requests and everything else are passed
+ * through unchanged.
+ *
+ * Memory mapped files can't be deleted or replaced on some platforms until the mapping is garbage collected, so this
+ * handler is only installed when it's explicitly requested.
+ */
+public class ZeroCopyFileHandler extends HandlerWrapper {
+
+    /**
+     * The root directory for the web application.
+     */
+    private final File appRootDir;
+
+    /**
+     * The web application context that requests are passed on to.
+     */
+    private final WebAppContext wac;
+
+    /**
+     * The cache of memory mapped files, which also determines the minimum size of files to serve from this handler.
+     */
+    private final MappedFileCache mappedFiles;
+
+    /**
+     * @param appRootDir the root directory for the web application.
+     * @param wac the web application context that requests are passed on to.
+     * @param mappedFiles the cache of memory mapped files.
+     */
+    public ZeroCopyFileHandler(File appRootDir, WebAppContext wac, MappedFileCache mappedFiles) {
+        this.appRootDir = appRootDir;
+        this.wac = wac;
+        this.mappedFiles = mappedFiles;
+    }
+
+    /**
+     * Serves a large static file if the request refers to one.
+     *
+     * @param target the request target.
+     * @param baseRequest the Jetty request.
+     * @param request the servlet request.
+     * @param response the servlet response.
+     * @throws IOException if an I/O error occurs.
+     * @throws ServletException if a servlet error occurs.
+     */
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+        if (StaticResources.isGetOrHead(request) && request.getHeader(HttpHeaders.RANGE) == null) {
+            File file = StaticResources.resolve(appRootDir, target);
+            if (file != null && file.length() >= mappedFiles.getThreshold() && StaticResources.isStaticFile(file)
+                    && !StaticResources.hasSecurityConstraints(wac)) {
+                serve(file, baseRequest, request, response);
+                return;
+            }
+        }
+        super.handle(target, baseRequest, request, response);
+    }
+
+    /**
+     * Serves a large static file.
+     *
+     * @param file the file to serve.
+     * @param baseRequest the Jetty request.
+     * @param request the servlet request.
+     * @param response the servlet response.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void serve(File file, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        long lastModified = file.lastModified() / 1000 * 1000;
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        if (StaticResources.isNotModified(request, null, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            baseRequest.setHandled(true);
+            return;
+        }
+        Buffer contentType = wac.getMimeTypes().getMimeByExtension(file.getName());
+        if (contentType != null) {
+            response.setContentType(contentType.toString());
+        }
+        StaticResources.sendFile(baseRequest, response, file, mappedFiles);
+    }
+}
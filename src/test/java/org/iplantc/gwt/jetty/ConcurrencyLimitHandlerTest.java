@@ -0,0 +1,118 @@
+package org.iplantc.gwt.jetty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ConcurrencyLimitHandler}.
+ */
+public class ConcurrencyLimitHandlerTest {
+
+    /**
+     * The largest limit used by the tests.
+     */
+    private static final int MAX_LIMIT = 100;
+
+    /**
+     * The target of the simulated GWT-RPC calls.
+     */
+    private static final String RPC_TARGET = "/app/service";
+
+    /**
+     * The content type of the simulated GWT-RPC calls.
+     */
+    private static final String RPC_CONTENT_TYPE = "text/x-gwt-rpc; charset=utf-8";
+
+    /**
+     * Verifies that a steady mix of cheap and expensive calls at low concurrency doesn't shrink the limit.
+     */
+    @Test
+    public void limitIsStableUnderMixedLatencyAtLowConcurrency() {
+        ConcurrencyLimitHandler handler = newHandler();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            long latency = random.nextInt(10) == 0 ? millis(50 + random.nextInt(50)) : millis(1 + random.nextInt(2));
+            handler.recordSample(RPC_TARGET, RPC_CONTENT_TYPE, latency, 1 + random.nextInt(4), false);
+        }
+        assertEquals(MAX_LIMIT, handler.getLimit());
+    }
+
+    /**
+     * Verifies that a steady mix of cheap and expensive calls doesn't shrink the limit even when it's fully in use.
+     */
+    @Test
+    public void limitIsStableUnderMixedLatencyAtTheLimit() {
+        ConcurrencyLimitHandler handler = newHandler();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            long latency = random.nextInt(10) == 0 ? millis(50 + random.nextInt(50)) : millis(1 + random.nextInt(2));
+            handler.recordSample(RPC_TARGET, RPC_CONTENT_TYPE, latency, handler.getLimit(), false);
+        }
+        assertEquals(MAX_LIMIT, handler.getLimit());
+    }
+
+    /**
+     * Verifies that failures at low concurrency don't shrink the limit.
+     */
+    @Test
+    public void failuresAtLowConcurrencyDontShrinkTheLimit() {
+        ConcurrencyLimitHandler handler = newHandler();
+        for (int i = 0; i < 1000; i++) {
+            handler.recordSample(RPC_TARGET, RPC_CONTENT_TYPE, millis(1), 1, true);
+        }
+        assertEquals(MAX_LIMIT, handler.getLimit());
+    }
+
+    /**
+     * Verifies that a sustained rise in latency while the limit is nearly exhausted shrinks the limit.
+     */
+    @Test
+    public void queueingNearTheLimitShrinksTheLimit() {
+        ConcurrencyLimitHandler handler = newHandler();
+        for (int i = 0; i < 1000; i++) {
+            handler.recordSample(RPC_TARGET, RPC_CONTENT_TYPE, millis(2), MAX_LIMIT, false);
+        }
+        assertEquals(MAX_LIMIT, handler.getLimit());
+        for (int i = 0; i < 200; i++) {
+            handler.recordSample(RPC_TARGET, RPC_CONTENT_TYPE, millis(40), handler.getLimit(), false);
+        }
+        assertTrue("limit " + handler.getLimit() + " should have shrunk", handler.getLimit() < MAX_LIMIT);
+    }
+
+    /**
+     * Verifies that the latency of one route class isn't compared with the latency of another.
+     */
+    @Test
+    public void routeClassesHaveSeparateBaselines() {
+        ConcurrencyLimitHandler handler = newHandler();
+        for (int i = 0; i < 5000; i++) {
+            handler.recordSample("/app/app.nocache.js", null, TimeUnit.MICROSECONDS.toNanos(100), MAX_LIMIT, false);
+            handler.recordSample(RPC_TARGET, RPC_CONTENT_TYPE, millis(20), MAX_LIMIT, false);
+        }
+        assertEquals(MAX_LIMIT, handler.getLimit());
+    }
+
+    /**
+     * Creates a handler with the test limit and no exempt paths.
+     *
+     * @return the handler.
+     */
+    private ConcurrencyLimitHandler newHandler() {
+        return new ConcurrencyLimitHandler(MAX_LIMIT, Collections.<String>emptySet());
+    }
+
+    /**
+     * Converts milliseconds to nanoseconds.
+     *
+     * @param millis the number of milliseconds.
+     * @return the number of nanoseconds.
+     */
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,151 @@
+package org.iplantc.gwt.jetty;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.UnsupportedEncodingException;
+import org.junit.Test;
+
+/**
+ * Unit tests for the GWT-RPC payload parsing and method bookkeeping in {@link GwtRpcMetricsHandler}.
+ */
+public class GwtRpcMetricsHandlerTest {
+
+    /**
+     * A call to {@code GreetingService.greetServer(String)} as serialized by the GWT 2.4 client.
+     */
+    private static final String GREET_SERVER_CALL = "7|0|6|http://localhost:8888/sample/|"
+            + "29F4EA1240F157649C12466F01F46F60|com.example.client.GreetingService|greetServer|"
+            + "java.lang.String/2004016611|GWT User|1|2|3|4|1|5|6|";
+
+    /**
+     * The header of {@link #GREET_SERVER_CALL}.
+     */
+    private static final String[] GREET_SERVER_HEADER = {
+            "http://localhost:8888/sample/", "29F4EA1240F157649C12466F01F46F60",
+            "com.example.client.GreetingService", "greetServer"
+    };
+
+    /**
+     * Verifies that the header of a real serialized call is parsed.
+     */
+    @Test
+    public void parsesSerializedCall() {
+        assertArrayEquals(GREET_SERVER_HEADER, new GwtRpcMetricsHandler().parseHeader(bytes(GREET_SERVER_CALL)));
+    }
+
+    /**
+     * Verifies that the header strings are looked up by index rather than by position in the string table.
+     */
+    @Test
+    public void parsesHeaderIndexesInAnyOrder() {
+        String call = "7|0|4|greetServer|com.example.client.GreetingService|STRONG|http://localhost/app/|4|3|2|1|0|";
+        String[] header = new GwtRpcMetricsHandler().parseHeader(bytes(call));
+        assertArrayEquals(new String[] {
+                "http://localhost/app/", "STRONG", "com.example.client.GreetingService", "greetServer"
+        }, header);
+    }
+
+    /**
+     * Verifies that each of the escapes GWT-RPC applies to strings is reversed.
+     */
+    @Test
+    public void unescapesStrings() {
+        GwtRpcMetricsHandler handler = new GwtRpcMetricsHandler();
+        assertEquals("plain", handler.unescape("plain"));
+        assertEquals("a|b", handler.unescape("a\\!b"));
+        assertEquals("a\0b", handler.unescape("a\\0b"));
+        assertEquals("a\\b", handler.unescape("a\\\\b"));
+        assertEquals("caf\u00e9", handler.unescape("caf\\u00e9"));
+        assertEquals((char) 0x2028 + "x", handler.unescape("\\u2028x"));
+        assertEquals("|\\\0", handler.unescape("\\!\\\\\\0"));
+    }
+
+    /**
+     * Verifies that escaped strings in the header are unescaped.
+     */
+    @Test
+    public void parsesEscapedHeaderStrings() {
+        String call = "7|0|4|http://localhost/a\\!b/|STRONG|com.example.client.Caf\\u00e9Service|greet\\\\Server|"
+                + "1|2|3|4|0|";
+        String[] header = new GwtRpcMetricsHandler().parseHeader(bytes(call));
+        assertArrayEquals(new String[] {
+                "http://localhost/a|b/", "STRONG", "com.example.client.Caf\u00e9Service", "greet\\Server"
+        }, header);
+    }
+
+    /**
+     * Verifies that every truncation of a serialized call either parses or yields null, and that truncations before
+     * the end of the header yield null.
+     */
+    @Test
+    public void truncatedPayloadsYieldNull() {
+        GwtRpcMetricsHandler handler = new GwtRpcMetricsHandler();
+        int headerEnd = GREET_SERVER_CALL.indexOf("|1|2|3|4|") + "|1|2|3|4|".length();
+        for (int length = 0; length < GREET_SERVER_CALL.length(); length++) {
+            String[] header = handler.parseHeader(bytes(GREET_SERVER_CALL.substring(0, length)));
+            if (length < headerEnd) {
+                assertNull("prefix of length " + length, header);
+            }
+            else {
+                assertArrayEquals("prefix of length " + length, GREET_SERVER_HEADER, header);
+            }
+        }
+    }
+
+    /**
+     * Verifies that malformed payloads yield null rather than an exception.
+     */
+    @Test
+    public void malformedPayloadsYieldNull() {
+        GwtRpcMetricsHandler handler = new GwtRpcMetricsHandler();
+        assertNull(handler.parseHeader(new byte[0]));
+        assertNull(handler.parseHeader(bytes("not a GWT-RPC call")));
+        assertNull(handler.parseHeader(bytes("7|0|x|a|b|c|d|1|2|3|4|")));
+        assertNull(handler.parseHeader(bytes("7|0|-1|1|2|3|4|")));
+        assertNull(handler.parseHeader(bytes("7|0|2147483647|a|1|2|3|4|")));
+        assertNull(handler.parseHeader(bytes("7|0|4|a|b|c|d|0|2|3|4|")));
+        assertNull(handler.parseHeader(bytes("7|0|4|a|b|c|d|1|2|3|5|")));
+        assertNull(handler.parseHeader(bytes("7|0|4|a|b|c|d|1|2|3|four|")));
+        assertNull(handler.parseHeader(bytes("7|0|4|a\\uZZZZ|b|c|d|1|2|3|4|")));
+    }
+
+    /**
+     * Verifies that once metrics exist for the maximum number of methods, further methods share one bucket while the
+     * existing methods keep their own.
+     */
+    @Test
+    public void recordsMethodsBeyondTheLimitTogether() {
+        GwtRpcMetricsHandler handler = new GwtRpcMetricsHandler();
+        Object first = handler.metricsFor("Service.method0");
+        for (int i = 1; i < GwtRpcMetricsHandler.MAX_METHODS; i++) {
+            handler.metricsFor("Service.method" + i);
+        }
+        assertEquals(GwtRpcMetricsHandler.MAX_METHODS, handler.getMethods().size());
+        Object overflow = handler.metricsFor("Service.extra1");
+        assertSame(overflow, handler.metricsFor("Service.extra2"));
+        assertNotSame(first, overflow);
+        assertSame(first, handler.metricsFor("Service.method0"));
+        assertEquals(GwtRpcMetricsHandler.MAX_METHODS + 1, handler.getMethods().size());
+        assertTrue(handler.getMethods().contains(GwtRpcMetricsHandler.OTHER_METHODS));
+    }
+
+    /**
+     * Encodes a payload the way the GWT client does.
+     *
+     * @param payload the payload.
+     * @return the UTF-8 bytes of the payload.
+     */
+    private static byte[] bytes(String payload) {
+        try {
+            return payload.getBytes("UTF-8");
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
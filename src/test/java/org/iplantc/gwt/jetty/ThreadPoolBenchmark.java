@@ -0,0 +1,153 @@
+package org.iplantc.gwt.jetty;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/**
+ * Compares the classic queued thread pool with the virtual thread pool for blocking workloads such as GWT-RPC services
+ * that call databases or remote services.  Each task blocks for a fixed amount of time to simulate a blocking call.
+ * The throughput and the latency from dispatch to completion are reported for each pool.
+ *
+ * This only measures the pools themselves: the tasks sleep rather than handle requests, so it says nothing about
+ * carrier pinning inside Jetty's I/O code.  It's a development tool and isn't part of the launcher.
+ *
+ * Usage: {@code ThreadPoolBenchmark [tasks [blockMillis [classicThreads [virtualConcurrency]]]]}
+ */
+public class ThreadPoolBenchmark {
+
+    /**
+     * The default number of tasks to dispatch.
+     */
+    private static final int DEFAULT_TASKS = 20000;
+
+    /**
+     * The default number of milliseconds each task blocks for.
+     */
+    private static final int DEFAULT_BLOCK_MILLIS = 50;
+
+    /**
+     * The default maximum number of threads in the classic thread pool.
+     */
+    private static final int DEFAULT_CLASSIC_THREADS = 200;
+
+    /**
+     * The default concurrency limit of the virtual thread pool.
+     */
+    private static final int DEFAULT_VIRTUAL_CONCURRENCY = 10000;
+
+    /**
+     * Prevent instantiation.
+     */
+    private ThreadPoolBenchmark() {}
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the optional number of tasks, block time, classic thread count and virtual concurrency limit.
+     * @throws Exception if a thread pool can't be started or stopped.
+     */
+    public static void main(String[] args) throws Exception {
+        int tasks = intArg(args, 0, DEFAULT_TASKS);
+        int blockMillis = intArg(args, 1, DEFAULT_BLOCK_MILLIS);
+        int classicThreads = intArg(args, 2, DEFAULT_CLASSIC_THREADS);
+        int virtualConcurrency = intArg(args, 3, DEFAULT_VIRTUAL_CONCURRENCY);
+        System.out.println(tasks + " tasks blocking for " + blockMillis + " ms each");
+
+        QueuedThreadPool classicPool = new QueuedThreadPool(classicThreads);
+        run("Queued thread pool (" + classicThreads + " threads)", classicPool, tasks, blockMillis);
+
+        if (VirtualThreadPool.isSupported()) {
+            VirtualThreadPool virtualPool = new VirtualThreadPool(virtualConcurrency);
+            run("Virtual thread pool (" + virtualConcurrency + " concurrent)", virtualPool, tasks, blockMillis);
+        }
+        else {
+            System.out.println("Virtual threads require Java 21 or later; skipping the virtual thread pool");
+        }
+    }
+
+    /**
+     * Runs the benchmark against a single thread pool.
+     *
+     * @param name the name of the thread pool.
+     * @param pool the thread pool.
+     * @param tasks the number of tasks to dispatch.
+     * @param blockMillis the number of milliseconds each task blocks for.
+     * @throws Exception if the thread pool can't be started or stopped.
+     */
+    private static void run(String name, ThreadPool pool, int tasks, final int blockMillis) throws Exception {
+        ((LifeCycle) pool).start();
+        try {
+            final long[] latencies = new long[tasks];
+            final CountDownLatch done = new CountDownLatch(tasks);
+            final AtomicInteger rejected = new AtomicInteger();
+            long start = System.nanoTime();
+            for (int i = 0; i < tasks; i++) {
+                final int index = i;
+                final long dispatchTime = System.nanoTime();
+                boolean dispatched = pool.dispatch(new Runnable() {
+                    public void run() {
+                        try {
+                            Thread.sleep(blockMillis);
+                        }
+                        catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        latencies[index] = System.nanoTime() - dispatchTime;
+                        done.countDown();
+                    }
+                });
+                if (!dispatched) {
+                    rejected.incrementAndGet();
+                    latencies[index] = -1;
+                    done.countDown();
+                }
+            }
+            done.await();
+            long elapsed = System.nanoTime() - start;
+            report(name, latencies, elapsed, rejected.get());
+        }
+        finally {
+            ((LifeCycle) pool).stop();
+        }
+    }
+
+    /**
+     * Prints the results for a single thread pool.
+     *
+     * @param name the name of the thread pool.
+     * @param latencies the latency of each task in nanoseconds, or -1 for tasks that were rejected.
+     * @param elapsed the total elapsed time in nanoseconds.
+     * @param rejected the number of tasks that were rejected.
+     */
+    private static void report(String name, long[] latencies, long elapsed, int rejected) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        int first = rejected;
+        int completed = sorted.length - first;
+        System.out.println(name + ":");
+        System.out.println("    elapsed:    " + elapsed / 1000000 + " ms");
+        System.out.println("    throughput: " + (completed * 1000000000L / Math.max(1, elapsed)) + " tasks/s");
+        if (completed > 0) {
+            System.out.println("    p50:        " + sorted[first + completed / 2] / 1000000 + " ms");
+            System.out.println("    p99:        " + sorted[first + (int) (completed * 0.99)] / 1000000 + " ms");
+            System.out.println("    max:        " + sorted[sorted.length - 1] / 1000000 + " ms");
+        }
+        System.out.println("    rejected:   " + rejected);
+    }
+
+    /**
+     * Parses an optional integer command-line argument.
+     *
+     * @param args the command-line arguments.
+     * @param index the index of the argument.
+     * @param defaultValue the value to use if the argument isn't present.
+     * @return the argument value.
+     */
+    private static int intArg(String[] args, int index, int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+}